@@ -0,0 +1,140 @@
+import java.util.HashMap;
+
+/**
+ * Compact attribute storage for {@link XmlNode}.
+ * Attributes are kept in parallel arrays in document order. Lookup is a linear scan while node has few attributes,
+ * hash index is built only when attribute count grows above {@link #HASH_THRESHOLD}.
+ */
+class XmlAttributes {
+
+    static final int HASH_THRESHOLD = 8;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] mNames = new String[INITIAL_CAPACITY];
+    private String[] mValues = new String[INITIAL_CAPACITY];
+    private int mSize = 0;
+
+    // name to position, exists only when size is above threshold.
+    private HashMap<String, Integer> mIndex = null;
+
+    public int size() {
+        return mSize;
+    }
+
+    public String getName(int index) {
+        return mNames[index];
+    }
+
+    public String getValue(int index) {
+        return mValues[index];
+    }
+
+    public int indexOf(String name) {
+        if (mIndex != null) {
+            Integer index = mIndex.get(name);
+            return index != null ? index : -1;
+        }
+        for (int i = 0; i < mSize; i++) {
+            String attrName = mNames[i];
+            if (attrName == name || (attrName != null && attrName.equals(name))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String get(String name) {
+        int index = indexOf(name);
+        return index >= 0 ? mValues[index] : null;
+    }
+
+    public void put(String name, String value) {
+        int index = indexOf(name);
+        if (index >= 0) {
+            mValues[index] = value;
+            return;
+        }
+
+        if (mSize == mNames.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, mSize * 2);
+            String[] names = new String[capacity];
+            String[] values = new String[capacity];
+            System.arraycopy(mNames, 0, names, 0, mSize);
+            System.arraycopy(mValues, 0, values, 0, mSize);
+            mNames = names;
+            mValues = values;
+        }
+        mNames[mSize] = name;
+        mValues[mSize] = value;
+        mSize++;
+
+        if (mIndex != null) {
+            mIndex.put(name, mSize - 1);
+        } else if (mSize > HASH_THRESHOLD) {
+            rebuildIndex();
+        }
+    }
+
+    public void remove(String name) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return;
+        }
+
+        int tail = mSize - index - 1;
+        if (tail > 0) {
+            System.arraycopy(mNames, index + 1, mNames, index, tail);
+            System.arraycopy(mValues, index + 1, mValues, index, tail);
+        }
+        mSize--;
+        mNames[mSize] = null;
+        mValues[mSize] = null;
+
+        if (mSize > HASH_THRESHOLD) {
+            rebuildIndex();
+        } else {
+            mIndex = null;
+        }
+    }
+
+    /**
+     * Remove all attributes, arrays are kept for reuse.
+     */
+    public void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mNames[i] = null;
+            mValues[i] = null;
+        }
+        mSize = 0;
+        mIndex = null;
+    }
+
+    /**
+     * Copy with arrays trimmed to attribute count.
+     *
+     * @param names pool for attribute names, <code>null</code> to keep names as is.
+     */
+    XmlAttributes copy(XmlNamePool names) {
+        XmlAttributes copy = new XmlAttributes();
+        copy.mNames = new String[mSize];
+        copy.mValues = new String[mSize];
+        for (int i = 0; i < mSize; i++) {
+            copy.mNames[i] = names != null ? names.intern(mNames[i]) : mNames[i];
+        }
+        System.arraycopy(mValues, 0, copy.mValues, 0, mSize);
+        copy.mSize = mSize;
+        if (mSize > HASH_THRESHOLD) {
+            copy.rebuildIndex();
+        }
+        return copy;
+    }
+
+    private void rebuildIndex() {
+        mIndex = new HashMap<String, Integer>(mSize * 2);
+        for (int i = 0; i < mSize; i++) {
+            mIndex.put(mNames[i], i);
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+/**
+ * Source of parsers and serializers used by {@link XmlNode}. Default backend is {@link XmlPullBackend},
+ * it can be replaced with {@link XmlNode#setBackend(XmlBackend)}, e.g. with <code>StaxBackend</code>
+ * from <code>jvm/</code> on server JVMs.
+ * Implementations must be thread safe, returned parsers and serializers are used by one thread at a time.
+ */
+public interface XmlBackend {
+
+    /**
+     * Create namespace aware pull parser.
+     */
+    XmlPullParser newParser() throws XmlPullParserException;
+
+    XmlSerializer newSerializer() throws XmlPullParserException;
+
+}
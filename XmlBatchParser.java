@@ -0,0 +1,155 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parses many xml files concurrently. Results are returned in the order of input files,
+ * failure of one file doesn't affect others.
+ *
+ * <pre>
+ * for (XmlBatchParser.Result result : XmlBatchParser.parse(files)) {
+ *     if (result.isSuccessful()) {
+ *         XmlNode config = result.getNode();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class XmlBatchParser {
+
+    private XmlBatchParser() {
+    }
+
+    /**
+     * Parse files on temporary thread pool sized by number of available processors.
+     */
+    public static List<Result> parse(Collection<File> files) throws InterruptedException {
+        return parse(files, false);
+    }
+
+    /**
+     * Parse files on temporary thread pool sized by number of available processors.
+     *
+     * @param failFast if <code>true</code> files which are not started yet are skipped after the first failure.
+     */
+    public static List<Result> parse(Collection<File> files, boolean failFast) throws InterruptedException {
+        int threads = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return parse(files, executor, failFast);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Parse files on specified executor, e.g. <code>ForkJoinPool</code> or virtual thread executor.
+     * Executor is not shut down.
+     *
+     * @return result for each file in the order of input collection.
+     * @throws InterruptedException if current thread is interrupted while waiting for results.
+     */
+    public static List<Result> parse(Collection<File> files, ExecutorService executor) throws InterruptedException {
+        return parse(files, executor, false);
+    }
+
+    /**
+     * Parse files on specified executor, e.g. <code>ForkJoinPool</code> or virtual thread executor.
+     * Executor is not shut down.
+     *
+     * @param failFast if <code>true</code> files which are not started yet are skipped after the first failure,
+     *                 their results hold <code>CancellationException</code>.
+     * @return result for each file in the order of input collection.
+     * @throws InterruptedException if current thread is interrupted while waiting for results.
+     */
+    public static List<Result> parse(Collection<File> files, ExecutorService executor, final boolean failFast)
+            throws InterruptedException {
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        ArrayList<Future<XmlNode>> futures = new ArrayList<Future<XmlNode>>(files.size());
+        for (final File file : files) {
+            futures.add(executor.submit(new Callable<XmlNode>() {
+                @Override
+                public XmlNode call() throws Exception {
+                    if (failFast && failed.get()) {
+                        throw new CancellationException("Skipped after previous failure");
+                    }
+                    XmlNode node = new XmlNode();
+                    try {
+                        node.parseOrThrow(file, XmlNode.DEFAULT_READ_BUFFER_SIZE);
+                    } catch (XmlParseException exc) {
+                        failed.set(true);
+                        throw exc;
+                    }
+                    return node;
+                }
+            }));
+        }
+
+        ArrayList<Result> results = new ArrayList<Result>(files.size());
+        int index = 0;
+        try {
+            for (File file : files) {
+                Future<XmlNode> future = futures.get(index++);
+                try {
+                    results.add(new Result(file, future.get(), null));
+                } catch (ExecutionException exc) {
+                    Throwable cause = exc.getCause();
+                    results.add(new Result(file, null, cause instanceof Exception ? (Exception) cause : exc));
+                }
+            }
+        } catch (InterruptedException exc) {
+            for (Future<XmlNode> future : futures) {
+                future.cancel(true);
+            }
+            throw exc;
+        }
+        return results;
+    }
+
+    /**
+     * Parse result of one file.
+     */
+    public static class Result {
+
+        private final File mFile;
+        private final XmlNode mNode;
+        private final Exception mError;
+
+        Result(File file, XmlNode node, Exception error) {
+            mFile = file;
+            mNode = node;
+            mError = error;
+        }
+
+        public File getFile() {
+            return mFile;
+        }
+
+        public boolean isSuccessful() {
+            return mError == null;
+        }
+
+        /**
+         * @return parsed tree or {@link XmlNode#NULL_NODE} if file is failed to parse.
+         */
+        public XmlNode getNode() {
+            return mNode != null ? mNode : XmlNode.NULL_NODE;
+        }
+
+        /**
+         * @return parse failure (usually {@link XmlParseException}) or <code>null</code> if file is parsed successfully.
+         */
+        public Exception getError() {
+            return mError;
+        }
+    }
+
+}
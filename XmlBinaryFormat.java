@@ -0,0 +1,304 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compact binary encoding of {@link XmlNode} tree, e.g. for caching parsed documents. Reading it back is much
+ * cheaper than parsing xml: there is no tokenizing, escaping or name matching.
+ * <p>
+ * Layout, all integers are unsigned varints, strings are varint byte length followed by utf-8 bytes:
+ * <pre>
+ * magic "XNB" version
+ * name count, names                              dictionary of element and attribute names
+ * node: name id, attribute count, (name id, value)*, value, child count, child nodes
+ * </pre>
+ * Values are written as length + 1, zero stands for <code>null</code>.
+ */
+class XmlBinaryFormat {
+
+    private static final byte[] MAGIC = {'X', 'N', 'B'};
+    private static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private XmlBinaryFormat() {
+    }
+
+    static void write(XmlNode root, OutputStream outputStream) throws IOException {
+        Output out = new Output(outputStream);
+        out.writeBytes(MAGIC, 0, MAGIC.length);
+        out.writeVarint(VERSION);
+
+        // collect names first, so reader knows all of them before nodes.
+        HashMap<String, Integer> ids = new HashMap<String, Integer>();
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<XmlNode> stack = new ArrayList<XmlNode>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            XmlNode node = stack.remove(stack.size() - 1);
+            addName(ids, names, node.getName());
+            XmlAttributes attributes = node.getAttributes();
+            int attrCount = attributes != null ? attributes.size() : 0;
+            for (int i = 0; i < attrCount; i++) {
+                addName(ids, names, attributes.getName(i));
+            }
+            for (int i = node.getChildrenCount() - 1; i >= 0; i--) {
+                stack.add(node.getChild(i));
+            }
+        }
+        out.writeVarint(names.size());
+        for (String name : names) {
+            out.writeString(name);
+        }
+
+        // nodes in document order.
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            XmlNode node = stack.remove(stack.size() - 1);
+            out.writeVarint(ids.get(node.getName()));
+            XmlAttributes attributes = node.getAttributes();
+            int attrCount = attributes != null ? attributes.size() : 0;
+            out.writeVarint(attrCount);
+            for (int i = 0; i < attrCount; i++) {
+                out.writeVarint(ids.get(attributes.getName(i)));
+                out.writeNullableString(attributes.getValue(i));
+            }
+            out.writeNullableString(node.getValue());
+            int childCount = node.getChildrenCount();
+            out.writeVarint(childCount);
+            for (int i = childCount - 1; i >= 0; i--) {
+                stack.add(node.getChild(i));
+            }
+        }
+        out.flush();
+    }
+
+    static XmlNode read(InputStream inputStream) throws IOException {
+        Input in = new Input(inputStream);
+        for (byte magic : MAGIC) {
+            if (in.readByte() != magic) {
+                throw new IOException("Not a binary XmlNode stream");
+            }
+        }
+        int version = in.readVarint();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary XmlNode version " + version);
+        }
+
+        int nameCount = in.readVarint();
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            names[i] = in.readString();
+        }
+
+        XmlNode root = new XmlNode();
+        // nodes which still wait for children and number of children left for each of them.
+        ArrayList<XmlNode> parents = new ArrayList<XmlNode>();
+        ArrayList<Integer> remaining = new ArrayList<Integer>();
+        XmlNode node = root;
+        while (true) {
+            node.setName(name(names, in.readVarint()));
+            int attrCount = in.readVarint();
+            for (int i = 0; i < attrCount; i++) {
+                String attrName = name(names, in.readVarint());
+                node.setAttribute(attrName, in.readNullableString());
+            }
+            node.setValue(in.readNullableString());
+            int childCount = in.readVarint();
+            if (childCount > 0) {
+                parents.add(node);
+                remaining.add(childCount);
+            }
+
+            // find parent of the next node.
+            int depth = parents.size() - 1;
+            while (depth >= 0 && remaining.get(depth) == 0) {
+                parents.remove(depth);
+                remaining.remove(depth);
+                depth--;
+            }
+            if (depth < 0) {
+                return root;
+            }
+            remaining.set(depth, remaining.get(depth) - 1);
+            node = new XmlNode();
+            parents.get(depth).addChild(node);
+        }
+    }
+
+    private static void addName(HashMap<String, Integer> ids, ArrayList<String> names, String name) {
+        if (!ids.containsKey(name)) {
+            ids.put(name, names.size());
+            names.add(name);
+        }
+    }
+
+    private static String name(String[] names, int id) throws IOException {
+        if (id < 0 || id >= names.length) {
+            throw new IOException("Invalid name id " + id);
+        }
+        return names[id];
+    }
+
+    /**
+     * Buffered output, streams don't need to be buffered by caller.
+     */
+    private static class Output {
+
+        private final OutputStream mStream;
+        private final byte[] mBuffer = new byte[BUFFER_SIZE];
+        private int mPosition = 0;
+
+        Output(OutputStream stream) {
+            mStream = stream;
+        }
+
+        void writeVarint(int value) throws IOException {
+            if (mPosition + 5 > mBuffer.length) {
+                flushBuffer();
+            }
+            while ((value & ~0x7f) != 0) {
+                mBuffer[mPosition++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBuffer[mPosition++] = (byte) value;
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        void writeNullableString(String value) throws IOException {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(bytes.length + 1);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+            if (length > mBuffer.length - mPosition) {
+                flushBuffer();
+                if (length > mBuffer.length) {
+                    mStream.write(bytes, offset, length);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, offset, mBuffer, mPosition, length);
+            mPosition += length;
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+            mStream.flush();
+        }
+
+        private void flushBuffer() throws IOException {
+            if (mPosition > 0) {
+                mStream.write(mBuffer, 0, mPosition);
+                mPosition = 0;
+            }
+        }
+    }
+
+    /**
+     * Buffered input. It may read ahead of the encoded tree, stream position after reading is undefined.
+     */
+    private static class Input {
+
+        private final InputStream mStream;
+        private byte[] mBuffer = new byte[BUFFER_SIZE];
+        private int mPosition = 0;
+        private int mLimit = 0;
+
+        Input(InputStream stream) {
+            mStream = stream;
+        }
+
+        byte readByte() throws IOException {
+            if (mPosition == mLimit) {
+                fill();
+            }
+            return mBuffer[mPosition++];
+        }
+
+        /**
+         * Read non-negative int, values which don't fit in 31 bits are rejected.
+         */
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 28; shift += 7) {
+                byte b = readByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            // last byte holds bits 28-30 only.
+            byte b = readByte();
+            if ((b & 0xf8) != 0) {
+                throw new IOException("Malformed varint");
+            }
+            return value | b << 28;
+        }
+
+        String readString() throws IOException {
+            return readUtf8(readVarint());
+        }
+
+        String readNullableString() throws IOException {
+            int length = readVarint();
+            if (length < 0) {
+                throw new IOException("Invalid string length " + length);
+            }
+            return length == 0 ? null : readUtf8(length - 1);
+        }
+
+        private String readUtf8(int length) throws IOException {
+            if (length < 0) {
+                throw new IOException("Invalid string length " + length);
+            }
+            while (mLimit - mPosition < length) {
+                if (length > mBuffer.length && mLimit == mBuffer.length) {
+                    // string doesn't fit, grow buffer as bytes arrive so corrupt length can't allocate it at once.
+                    byte[] grown = new byte[(int) Math.min(length, mBuffer.length * 2L)];
+                    System.arraycopy(mBuffer, mPosition, grown, 0, mLimit - mPosition);
+                    mLimit -= mPosition;
+                    mPosition = 0;
+                    mBuffer = grown;
+                }
+                fill();
+            }
+            String value = new String(mBuffer, mPosition, length, UTF_8);
+            mPosition += length;
+            return value;
+        }
+
+        /**
+         * Read more bytes, unread bytes are moved to buffer start if there is no room after them.
+         */
+        private void fill() throws IOException {
+            if (mLimit == mBuffer.length) {
+                System.arraycopy(mBuffer, mPosition, mBuffer, 0, mLimit - mPosition);
+                mLimit -= mPosition;
+                mPosition = 0;
+            }
+            int count = mStream.read(mBuffer, mLimit, mBuffer.length - mLimit);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of binary XmlNode stream");
+            }
+            mLimit += count;
+        }
+    }
+
+}
@@ -0,0 +1,575 @@
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Read-only compact document. Unlike {@link XmlNode} tree, nodes are not objects: each node is an index into
+ * parallel int arrays (name id, parent, first child, next sibling, text offset and length), all text is kept
+ * in one char array and names in one dictionary. Large document takes a few arrays instead of millions of small
+ * objects, which is cheaper for GC, and traversal reads adjacent memory.
+ * <p>
+ * Nodes are numbered in document order starting with root at 0, so subtree of a node is a continuous range of indexes.
+ * Nodes can be accessed by index or through {@link Element} views which are created on demand and hold no data.
+ *
+ * <pre>
+ * XmlDocument document = XmlDocument.parse(reader);
+ * for (XmlDocument.Element product : document.getRootElement().getChildren("product")) {
+ *     String id = product.getAttribute("id");
+ *     ...
+ * }
+ * </pre>
+ */
+public class XmlDocument {
+
+    /**
+     * Index returned when node is absent, e.g. last child has no next sibling.
+     */
+    public static final int NO_NODE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] mNames = new String[INITIAL_CAPACITY];
+    private int mNameCount = 0;
+    private final HashMap<String, Integer> mNameIds = new HashMap<String, Integer>();
+
+    private int mCount = 0;
+    private int[] mNameId = new int[INITIAL_CAPACITY];
+    private int[] mParent = new int[INITIAL_CAPACITY];
+    private int[] mFirstChild = new int[INITIAL_CAPACITY];
+    private int[] mNextSibling = new int[INITIAL_CAPACITY];
+    private int[] mTextOffset = new int[INITIAL_CAPACITY];
+    private int[] mTextLength = new int[INITIAL_CAPACITY];
+    // attributes of node i are at [mAttrStart[i], mAttrStart[i + 1]).
+    private int[] mAttrStart = new int[INITIAL_CAPACITY + 1];
+
+    private int mAttrCount = 0;
+    private int[] mAttrName = new int[INITIAL_CAPACITY];
+    private int[] mAttrValueOffset = new int[INITIAL_CAPACITY];
+    private int[] mAttrValueLength = new int[INITIAL_CAPACITY];
+
+    private char[] mText = new char[INITIAL_CAPACITY * 16];
+    private int mTextSize = 0;
+
+    private XmlDocument() {
+    }
+
+    public static XmlDocument parse(Reader reader) throws XmlParseException {
+        return parse(reader, XmlParseOptions.DEFAULT);
+    }
+
+    /**
+     * Parse root element of xml. Lazy text option is ignored, text is always kept in document buffer.
+     *
+     * @param reader reader to read xml from. it's not closed by this method.
+     */
+    public static XmlDocument parse(Reader reader, XmlParseOptions options) throws XmlParseException {
+        return XmlNode.withParser(reader, parseTask(options));
+    }
+
+    public static XmlDocument parse(InputStream inputStream, String encoding) throws XmlParseException {
+        return parse(inputStream, encoding, XmlParseOptions.DEFAULT);
+    }
+
+    /**
+     * @param inputStream stream to read xml from. it's not closed by this method.
+     * @param encoding input encoding or <code>null</code> to detect it from xml declaration.
+     */
+    public static XmlDocument parse(InputStream inputStream, String encoding, XmlParseOptions options)
+            throws XmlParseException {
+        return XmlNode.withParser(inputStream, encoding, parseTask(options));
+    }
+
+    private static XmlNode.ParserTask<XmlDocument> parseTask(final XmlParseOptions options) {
+        return new XmlNode.ParserTask<XmlDocument>() {
+            @Override
+            public XmlDocument run(XmlPullParser xpp) throws XmlParseException {
+                XmlDocument document = new XmlDocument();
+                document.parse(xpp, options);
+                return document;
+            }
+        };
+    }
+
+    private void parse(XmlPullParser xpp, XmlParseOptions options) throws XmlParseException {
+        // last child of each node, used to link siblings while document is built.
+        int[] lastChild = new int[INITIAL_CAPACITY];
+        int current = NO_NODE;
+        // text of open elements by depth, it's written to document text once element is closed, so text of element
+        // split by child elements is still continuous and nothing is copied twice. builders are reused.
+        StringBuilder[] pendingText = new StringBuilder[16];
+        int depth = 0;
+        // start and length holder for getTextCharacters().
+        int[] holder = new int[2];
+
+        try {
+            int eventType = xpp.getEventType();
+            while (eventType != XmlPullParser.END_DOCUMENT) {
+                if (eventType == XmlPullParser.START_TAG) {
+                    int node = addNode(nameId(xpp.getName()), current);
+                    if (node == lastChild.length) {
+                        int[] grown = new int[lastChild.length * 2];
+                        System.arraycopy(lastChild, 0, grown, 0, lastChild.length);
+                        lastChild = grown;
+                    }
+                    lastChild[node] = NO_NODE;
+                    if (current != NO_NODE) {
+                        if (lastChild[current] == NO_NODE) {
+                            mFirstChild[current] = node;
+                        } else {
+                            mNextSibling[lastChild[current]] = node;
+                        }
+                        lastChild[current] = node;
+                    }
+                    for (int i = 0; i < xpp.getAttributeCount(); i++) {
+                        addAttribute(nameId(xpp.getAttributeName(i)), xpp.getAttributeValue(i));
+                    }
+                    current = node;
+                    depth++;
+                    if (depth == pendingText.length) {
+                        StringBuilder[] grown = new StringBuilder[pendingText.length * 2];
+                        System.arraycopy(pendingText, 0, grown, 0, pendingText.length);
+                        pendingText = grown;
+                    }
+                    if (pendingText[depth] == null) {
+                        pendingText[depth] = new StringBuilder();
+                    }
+                } else if (eventType == XmlPullParser.TEXT && current != NO_NODE) {
+                    if (!options.isIgnoreWhitespace() || !xpp.isWhitespace()) {
+                        char[] chars = xpp.getTextCharacters(holder);
+                        pendingText[depth].append(chars, holder[0], holder[1]);
+                    }
+                } else if (eventType == XmlPullParser.END_TAG && current != NO_NODE) {
+                    setText(current, pendingText[depth]);
+                    pendingText[depth].setLength(0);
+                    depth--;
+                    current = mParent[current];
+                    if (current == NO_NODE) {
+                        // root element is closed.
+                        break;
+                    }
+                }
+                eventType = xpp.next();
+            }
+            if (current != NO_NODE) {
+                throw new XmlParseException("Unexpected end of document", xpp.getLineNumber(), xpp.getColumnNumber(),
+                        elementPath(current), null);
+            }
+            if (mCount == 0) {
+                throw new XmlParseException("No root element", xpp.getLineNumber(), xpp.getColumnNumber(), "", null);
+            }
+        } catch (XmlPullParserException | IOException | RuntimeException exc) {
+            throw XmlNode.parseFailure(xpp, exc, elementPath(current));
+        }
+
+        mAttrStart[mCount] = mAttrCount;
+        trim();
+    }
+
+    private int nameId(String name) {
+        Integer id = mNameIds.get(name);
+        if (id == null) {
+            if (mNameCount == mNames.length) {
+                String[] grown = new String[mNameCount * 2];
+                System.arraycopy(mNames, 0, grown, 0, mNameCount);
+                mNames = grown;
+            }
+            id = mNameCount++;
+            mNames[id] = name;
+            mNameIds.put(name, id);
+        }
+        return id;
+    }
+
+    private int addNode(int nameId, int parent) {
+        if (mCount == mNameId.length) {
+            int capacity = mCount * 2;
+            mNameId = grow(mNameId, capacity);
+            mParent = grow(mParent, capacity);
+            mFirstChild = grow(mFirstChild, capacity);
+            mNextSibling = grow(mNextSibling, capacity);
+            mTextOffset = grow(mTextOffset, capacity);
+            mTextLength = grow(mTextLength, capacity);
+            mAttrStart = grow(mAttrStart, capacity + 1);
+        }
+        int node = mCount++;
+        mNameId[node] = nameId;
+        mParent[node] = parent;
+        mFirstChild[node] = NO_NODE;
+        mNextSibling[node] = NO_NODE;
+        mTextOffset[node] = 0;
+        mTextLength[node] = 0;
+        mAttrStart[node] = mAttrCount;
+        return node;
+    }
+
+    private void addAttribute(int nameId, String value) {
+        if (mAttrCount == mAttrName.length) {
+            int capacity = mAttrCount * 2;
+            mAttrName = grow(mAttrName, capacity);
+            mAttrValueOffset = grow(mAttrValueOffset, capacity);
+            mAttrValueLength = grow(mAttrValueLength, capacity);
+        }
+        int length = value.length();
+        ensureText(length);
+        value.getChars(0, length, mText, mTextSize);
+        mAttrName[mAttrCount] = nameId;
+        mAttrValueOffset[mAttrCount] = mTextSize;
+        mAttrValueLength[mAttrCount] = length;
+        mTextSize += length;
+        mAttrCount++;
+    }
+
+    /**
+     * Set whole text of closed node.
+     */
+    private void setText(int node, StringBuilder text) {
+        int length = text.length();
+        if (length == 0) {
+            return;
+        }
+        ensureText(length);
+        text.getChars(0, length, mText, mTextSize);
+        mTextOffset[node] = mTextSize;
+        mTextLength[node] = length;
+        mTextSize += length;
+    }
+
+    private void ensureText(int length) {
+        if (mTextSize + length > mText.length) {
+            char[] grown = new char[Math.max(mText.length * 2, mTextSize + length)];
+            System.arraycopy(mText, 0, grown, 0, mTextSize);
+            mText = grown;
+        }
+    }
+
+    private void trim() {
+        if (mNames.length > mNameCount) {
+            String[] names = new String[mNameCount];
+            System.arraycopy(mNames, 0, names, 0, mNameCount);
+            mNames = names;
+        }
+        mNameId = grow(mNameId, mCount);
+        mParent = grow(mParent, mCount);
+        mFirstChild = grow(mFirstChild, mCount);
+        mNextSibling = grow(mNextSibling, mCount);
+        mTextOffset = grow(mTextOffset, mCount);
+        mTextLength = grow(mTextLength, mCount);
+        mAttrStart = grow(mAttrStart, mCount + 1);
+        mAttrName = grow(mAttrName, mAttrCount);
+        mAttrValueOffset = grow(mAttrValueOffset, mAttrCount);
+        mAttrValueLength = grow(mAttrValueLength, mAttrCount);
+        if (mText.length > mTextSize) {
+            char[] text = new char[mTextSize];
+            System.arraycopy(mText, 0, text, 0, mTextSize);
+            mText = text;
+        }
+    }
+
+    private static int[] grow(int[] array, int size) {
+        int[] grown = new int[size];
+        System.arraycopy(array, 0, grown, 0, Math.min(array.length, size));
+        return grown;
+    }
+
+    private String elementPath(int node) {
+        StringBuilder path = new StringBuilder();
+        for (; node != NO_NODE; node = mParent[node]) {
+            path.insert(0, mNames[mNameId[node]]).insert(0, '/');
+        }
+        return path.toString();
+    }
+
+    /**
+     * Number of chars in document text buffer, it's the total length of all values and attribute values.
+     */
+    int getTextSize() {
+        return mTextSize;
+    }
+
+    public int getNodeCount() {
+        return mCount;
+    }
+
+    public int getRoot() {
+        return 0;
+    }
+
+    public Element getRootElement() {
+        return new Element(this, 0);
+    }
+
+    public Element getElement(int node) {
+        return new Element(this, node);
+    }
+
+    public String getName(int node) {
+        return mNames[mNameId[node]];
+    }
+
+    public String getValue(int node) {
+        return new String(mText, mTextOffset[node], mTextLength[node]);
+    }
+
+    public int getParent(int node) {
+        return mParent[node];
+    }
+
+    public int getFirstChild(int node) {
+        return mFirstChild[node];
+    }
+
+    public int getNextSibling(int node) {
+        return mNextSibling[node];
+    }
+
+    public int getChildrenCount(int node) {
+        int count = 0;
+        for (int child = mFirstChild[node]; child != NO_NODE; child = mNextSibling[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Get first child with specified name.
+     *
+     * @return child index or {@link #NO_NODE}.
+     */
+    public int getChild(int node, String name) {
+        Integer nameId = mNameIds.get(name);
+        if (nameId == null) {
+            return NO_NODE;
+        }
+        for (int child = mFirstChild[node]; child != NO_NODE; child = mNextSibling[child]) {
+            if (mNameId[child] == nameId) {
+                return child;
+            }
+        }
+        return NO_NODE;
+    }
+
+    /**
+     * Find first descendant with specified name in document order.
+     *
+     * @return node index or {@link #NO_NODE}.
+     */
+    public int findNode(int node, String name) {
+        Integer nameId = mNameIds.get(name);
+        if (nameId == null) {
+            return NO_NODE;
+        }
+        int end = subtreeEnd(node);
+        for (int i = node + 1; i < end; i++) {
+            if (mNameId[i] == nameId) {
+                return i;
+            }
+        }
+        return NO_NODE;
+    }
+
+    /**
+     * Find all descendants with specified name in document order.
+     */
+    public int[] findNodes(int node, String name) {
+        Integer nameId = mNameIds.get(name);
+        if (nameId == null) {
+            return new int[0];
+        }
+        int end = subtreeEnd(node);
+        int count = 0;
+        for (int i = node + 1; i < end; i++) {
+            if (mNameId[i] == nameId) {
+                count++;
+            }
+        }
+        int[] result = new int[count];
+        count = 0;
+        for (int i = node + 1; i < end; i++) {
+            if (mNameId[i] == nameId) {
+                result[count++] = i;
+            }
+        }
+        return result;
+    }
+
+    public int getAttributeCount(int node) {
+        return mAttrStart[node + 1] - mAttrStart[node];
+    }
+
+    public String getAttributeName(int node, int index) {
+        return mNames[mAttrName[mAttrStart[node] + index]];
+    }
+
+    public String getAttributeValue(int node, int index) {
+        int attr = mAttrStart[node] + index;
+        return new String(mText, mAttrValueOffset[attr], mAttrValueLength[attr]);
+    }
+
+    public String getAttribute(int node, String name) {
+        Integer nameId = mNameIds.get(name);
+        if (nameId == null) {
+            return null;
+        }
+        for (int attr = mAttrStart[node]; attr < mAttrStart[node + 1]; attr++) {
+            if (mAttrName[attr] == nameId) {
+                return new String(mText, mAttrValueOffset[attr], mAttrValueLength[attr]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create regular {@link XmlNode} tree for subtree of node, e.g. to modify or serialize it.
+     */
+    public XmlNode toXmlNode(int node) {
+        XmlNode root = new XmlNode();
+        fill(root, node);
+        ArrayList<XmlNode> nodes = new ArrayList<XmlNode>();
+        ArrayList<Integer> indexes = new ArrayList<Integer>();
+        nodes.add(root);
+        indexes.add(node);
+        while (!nodes.isEmpty()) {
+            XmlNode parent = nodes.remove(nodes.size() - 1);
+            int index = indexes.remove(indexes.size() - 1);
+            for (int child = mFirstChild[index]; child != NO_NODE; child = mNextSibling[child]) {
+                XmlNode childNode = new XmlNode();
+                fill(childNode, child);
+                parent.addChild(childNode);
+                nodes.add(childNode);
+                indexes.add(child);
+            }
+        }
+        return root;
+    }
+
+    private void fill(XmlNode target, int node) {
+        target.setName(getName(node));
+        target.setValue(getValue(node));
+        for (int i = 0; i < getAttributeCount(node); i++) {
+            target.setAttribute(getAttributeName(node, i), getAttributeValue(node, i));
+        }
+    }
+
+    /**
+     * Index after the last descendant of node.
+     */
+    private int subtreeEnd(int node) {
+        for (; node != NO_NODE; node = mParent[node]) {
+            if (mNextSibling[node] != NO_NODE) {
+                return mNextSibling[node];
+            }
+        }
+        return mCount;
+    }
+
+    /**
+     * Lightweight view of document node, it keeps only document and node index.
+     * View of absent node (see {@link #isNullNode()}) has empty name and value and no attributes or children.
+     */
+    public static class Element {
+
+        private final XmlDocument mDocument;
+        private final int mIndex;
+
+        Element(XmlDocument document, int index) {
+            mDocument = document;
+            mIndex = index;
+        }
+
+        public XmlDocument getDocument() {
+            return mDocument;
+        }
+
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public boolean isNullNode() {
+            return mIndex == NO_NODE;
+        }
+
+        public String getName() {
+            return mIndex != NO_NODE ? mDocument.getName(mIndex) : "";
+        }
+
+        public String getValue() {
+            return mIndex != NO_NODE ? mDocument.getValue(mIndex) : "";
+        }
+
+        public String getAttribute(String attrName) {
+            return mIndex != NO_NODE ? mDocument.getAttribute(mIndex, attrName) : null;
+        }
+
+        public Element getParent() {
+            return new Element(mDocument, mIndex != NO_NODE ? mDocument.mParent[mIndex] : NO_NODE);
+        }
+
+        public Element getChild(String name) {
+            return new Element(mDocument, mIndex != NO_NODE ? mDocument.getChild(mIndex, name) : NO_NODE);
+        }
+
+        public String getChildValue(String name) {
+            return getChild(name).getValue();
+        }
+
+        public int getChildrenCount() {
+            return mIndex != NO_NODE ? mDocument.getChildrenCount(mIndex) : 0;
+        }
+
+        public ArrayList<Element> getChildren() {
+            ArrayList<Element> children = new ArrayList<Element>();
+            if (mIndex != NO_NODE) {
+                for (int child = mDocument.mFirstChild[mIndex]; child != NO_NODE; child = mDocument.mNextSibling[child]) {
+                    children.add(new Element(mDocument, child));
+                }
+            }
+            return children;
+        }
+
+        public ArrayList<Element> getChildren(String name) {
+            ArrayList<Element> children = new ArrayList<Element>();
+            Integer nameId = mDocument.mNameIds.get(name);
+            if (mIndex != NO_NODE && nameId != null) {
+                for (int child = mDocument.mFirstChild[mIndex]; child != NO_NODE; child = mDocument.mNextSibling[child]) {
+                    if (mDocument.mNameId[child] == nameId) {
+                        children.add(new Element(mDocument, child));
+                    }
+                }
+            }
+            return children;
+        }
+
+        public Element findNode(String name) {
+            return new Element(mDocument, mIndex != NO_NODE ? mDocument.findNode(mIndex, name) : NO_NODE);
+        }
+
+        public XmlNode toXmlNode() {
+            return mIndex != NO_NODE ? mDocument.toXmlNode(mIndex) : XmlNode.NULL_NODE;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Element)) {
+                return false;
+            }
+            Element element = (Element) other;
+            return element.mDocument == mDocument && element.mIndex == mIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mDocument) * 31 + mIndex;
+        }
+
+        @Override
+        public String toString() {
+            return toXmlNode().toString();
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+import java.util.HashMap;
+
+/**
+ * Symbol table for element and attribute names met during parsing, so equal names share one <code>String</code>
+ * instance. Pool is bounded, names above the limit are returned as is.
+ */
+class XmlNamePool {
+
+    static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final HashMap<String, String> mNames = new HashMap<String, String>();
+    private final int mMaxSize;
+
+    XmlNamePool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    XmlNamePool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    public String intern(String name) {
+        if (name == null) {
+            return null;
+        }
+        String pooled = mNames.get(name);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (mNames.size() < mMaxSize) {
+            mNames.put(name, name);
+        }
+        return name;
+    }
+
+}
@@ -1,21 +1,41 @@
-import android.util.Xml;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
  * Utility class for quick and simple xml serialization and deserialization.
  */
 public class XmlNode {
 
-    // node name/value.
+    // parsers are created by backend and cached per thread since they are not thread safe.
+    private static volatile XmlBackend sBackend = new XmlPullBackend();
+    private static volatile ThreadLocal<XmlPullParser> sParser = new ThreadLocal<XmlPullParser>();
+
+    /**
+     * Shared read-only instance returned on lookup misses. Any attempt to modify it throws <code>UnsupportedOperationException</code>.
+     */
+    public static final XmlNode NULL_NODE = new XmlNode();
+
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
+    public static final int DEFAULT_READ_BUFFER_SIZE = 16384;
+
+    // node name/value. value is either String or slice of document text buffer, see XmlParseOptions.setLazyText().
     private String mName = "";
-    private String mValue = "";
+    private CharSequence mValue = "";
 
     /**
      * Initialization marker for node. it's <code>true</code> when node is created, but not initialized.
@@ -25,16 +45,28 @@ public class XmlNode {
 
     private XmlNode mParent = null;
 
-    private HashMap<String, String> mAttributes;
+    // attributes and children are allocated on first write, most of nodes are leaves without them.
+    private XmlAttributes mAttributes = null;
 
-    private ArrayList<XmlNode> mChildren;
-    private HashMap<String, Integer> mChildrenMap;
+    private ChildList mChildren = null;
+    // position of the first child with each name, dropped when children list is modified through getChildren().
+    private HashMap<String, Integer> mChildrenMap = null;
 
-    public XmlNode() {
-        mAttributes = new HashMap<String, String>();
+    // all children grouped by name, built on first getChildren(name) call and dropped with mChildrenMap.
+    private HashMap<String, ArrayList<XmlNode>> mChildrenByName = null;
 
-        mChildren = new ArrayList<XmlNode>();
-        mChildrenMap = new HashMap<String, Integer>();
+    // document name index shared by all nodes of the tree, exists only after buildIndex() call.
+    private XmlNodeIndex mSubtreeIndex = null;
+
+    // position in document order, end of subtree and index generation, maintained by XmlNodeIndex.
+    int mIndexPosition = 0;
+    int mIndexEnd = 0;
+    int mIndexGeneration = -1;
+
+    // frozen nodes are read-only, see freeze().
+    private boolean mFrozen = false;
+
+    public XmlNode() {
     }
 
     public XmlNode(File file) throws XmlPullParserException, IOException {
@@ -42,97 +74,614 @@ public class XmlNode {
         parse(file);
     }
 
+    /**
+     * Set backend which creates parsers for all subsequent parse calls.
+     */
+    public static synchronized void setBackend(XmlBackend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend can't be null");
+        }
+        sBackend = backend;
+        // drop parsers of previous backend.
+        sParser = new ThreadLocal<XmlPullParser>();
+    }
+
+    public static XmlBackend getBackend() {
+        return sBackend;
+    }
+
+    /**
+     * Get parser for current thread. Parser is created on first use and reused by subsequent parse calls.
+     */
+    static XmlPullParser obtainParser() throws XmlPullParserException {
+        ThreadLocal<XmlPullParser> parsers = sParser;
+        XmlPullParser xpp = parsers.get();
+        if (xpp == null) {
+            xpp = sBackend.newParser();
+            parsers.set(xpp);
+        }
+        return xpp;
+    }
+
+    /**
+     * Detach input from cached parser so it doesn't keep a reference to the stream.
+     */
+    static void releaseParser(XmlPullParser xpp) {
+        try {
+            xpp.setInput((Reader) null);
+        } catch (Exception exc) {
+            // parser can't be reset, don't reuse it.
+            sParser.remove();
+        }
+    }
+
+    /**
+     * Work done with cached parser attached to input, see {@link #withParser(Reader, ParserTask)}.
+     */
+    interface ParserTask<T> {
+        T run(XmlPullParser xpp) throws XmlParseException;
+    }
+
+    /**
+     * Run task with parser of current thread reading from reader. Parser is detached from input when task is done.
+     */
+    static <T> T withParser(Reader reader, ParserTask<T> task) throws XmlParseException {
+        return withParser(reader, null, null, task);
+    }
+
+    /**
+     * Run task with parser of current thread reading from stream. Parser is detached from input when task is done.
+     *
+     * @param encoding input encoding or <code>null</code> to detect it from xml declaration.
+     */
+    static <T> T withParser(InputStream inputStream, String encoding, ParserTask<T> task) throws XmlParseException {
+        return withParser(null, inputStream, encoding, task);
+    }
+
+    private static <T> T withParser(Reader reader, InputStream inputStream, String encoding, ParserTask<T> task)
+            throws XmlParseException {
+        XmlPullParser xpp = null;
+        try {
+            xpp = obtainParser();
+            if (reader != null) {
+                xpp.setInput(reader);
+            } else {
+                xpp.setInput(inputStream, encoding);
+            }
+            return task.run(xpp);
+        } catch (XmlPullParserException exc) {
+            throw new XmlParseException(exc.getMessage(), exc.getLineNumber(), exc.getColumnNumber(), "", exc);
+        } finally {
+            if (xpp != null) {
+                releaseParser(xpp);
+            }
+        }
+    }
+
+    /**
+     * Wrap failure of parser with its position and path of element being parsed.
+     */
+    static XmlParseException parseFailure(XmlPullParser xpp, Exception exc, String elementPath) {
+        // parsers may fail on malformed input with unchecked exceptions, e.g. on broken entity references.
+        String message = exc instanceof RuntimeException ? "Malformed xml: " + exc : exc.getMessage();
+        return new XmlParseException(message, xpp.getLineNumber(), xpp.getColumnNumber(), elementPath, exc);
+    }
+
     public boolean parse(File file) {
+        return parse(file, DEFAULT_READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Parse file through buffered stream, file is closed when parsing is finished or failed.
+     *
+     * @param bufferSize size of read buffer in bytes.
+     * @return <code>true</code> if xml is parsed successfully.
+     */
+    public boolean parse(File file, int bufferSize) {
+        checkWritable();
         try {
-            XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-            factory.setNamespaceAware(true);
+            parseOrThrow(file, bufferSize);
+        } catch (XmlParseException exc) {
+            return false;
+        }
+        return true;
+    }
+
+    public void parseOrThrow(File file) throws XmlParseException {
+        parseOrThrow(file, DEFAULT_READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Parse file, failures are reported with exception which tells where parsing stopped.
+     */
+    public void parseOrThrow(File file, int bufferSize) throws XmlParseException {
+        parseOrThrow(file, bufferSize, XmlParseOptions.DEFAULT);
+    }
+
+    public void parseOrThrow(File file, int bufferSize, XmlParseOptions options) throws XmlParseException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file), bufferSize)) {
+            parseOrThrow(inputStream, "utf-8", options);
+        } catch (IOException exc) {
+            // failed to open or close file, parse failures are already wrapped.
+            throw new XmlParseException("Can't read " + file, -1, -1, "", exc);
+        }
+    }
+
+    /**
+     * Parse file by mapping it into memory instead of reading it through stream. File handle is closed
+     * before parsing starts, mapping itself is released when buffer is garbage collected.
+     * Files larger than 2 GB can't be mapped at once, use {@link XmlNodeReader} for them.
+     *
+     * @return <code>true</code> if xml is parsed successfully.
+     */
+    public boolean parseMapped(File file) {
+        checkWritable();
+        MappedByteBuffer buffer;
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException exc) {
+            return false;
+        } catch (IllegalArgumentException exc) {
+            // file is too large to be mapped.
+            return false;
+        }
+        return parse(buffer);
+    }
 
-            XmlPullParser xpp = factory.newPullParser();
-            XmlNode currentNode = this;
+    public boolean parse(InputStream inputStream) {
+        return parse(inputStream, "utf-8");
+    }
 
-            xpp.setInput(new FileInputStream(file), "utf-8");
+    /**
+     * Parse xml from stream.
+     *
+     * @param inputStream stream to read xml from. it's not closed by this method.
+     * @param encoding input encoding or <code>null</code> to detect it from xml declaration.
+     * @return <code>true</code> if xml is parsed successfully.
+     */
+    public boolean parse(InputStream inputStream, String encoding) {
+        checkWritable();
+        try {
+            parseOrThrow(inputStream, encoding);
+        } catch (XmlParseException exc) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse xml from stream, failures are reported with exception which tells where parsing stopped.
+     *
+     * @param inputStream stream to read xml from. it's not closed by this method.
+     * @param encoding input encoding or <code>null</code> to detect it from xml declaration.
+     */
+    public void parseOrThrow(InputStream inputStream, String encoding) throws XmlParseException {
+        parseOrThrow(inputStream, encoding, XmlParseOptions.DEFAULT);
+    }
+
+    public void parseOrThrow(InputStream inputStream, String encoding, XmlParseOptions options)
+            throws XmlParseException {
+        checkWritable();
+        withParser(inputStream, encoding, documentTask(options));
+    }
+
+    /**
+     * Parse xml from reader.
+     *
+     * @param reader reader to read xml from. it's not closed by this method.
+     * @return <code>true</code> if xml is parsed successfully.
+     */
+    public boolean parse(Reader reader) {
+        checkWritable();
+        try {
+            parseOrThrow(reader);
+        } catch (XmlParseException exc) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse xml from reader, failures are reported with exception which tells where parsing stopped.
+     *
+     * @param reader reader to read xml from. it's not closed by this method.
+     */
+    public void parseOrThrow(Reader reader) throws XmlParseException {
+        parseOrThrow(reader, XmlParseOptions.DEFAULT);
+    }
+
+    public void parseOrThrow(Reader reader, XmlParseOptions options) throws XmlParseException {
+        checkWritable();
+        withParser(reader, documentTask(options));
+    }
+
+    /**
+     * Task which parses document with exactly one root element into this node.
+     */
+    private ParserTask<Void> documentTask(final XmlParseOptions options) {
+        return new ParserTask<Void>() {
+            @Override
+            public Void run(XmlPullParser xpp) throws XmlParseException {
+                if (!parse(xpp, options)) {
+                    throw new XmlParseException("No root element", xpp.getLineNumber(), xpp.getColumnNumber(), "",
+                            null);
+                }
+                return null;
+            }
+        };
+    }
+
+    public boolean parse(byte[] data) {
+        return parse(data, 0, data.length);
+    }
+
+    public boolean parse(byte[] data, int offset, int length) {
+        return parse(new ByteArrayInputStream(data, offset, length));
+    }
+
+    /**
+     * Parse xml from remaining bytes of buffer. Buffer position is not changed.
+     */
+    public boolean parse(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return parse(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return parse(new ByteBufferInputStream(buffer.duplicate()));
+    }
+
+    /**
+     * Parse root element parser is positioned at or before into this node. Parsing stops at the end tag
+     * of root element, content after it is not read.
+     *
+     * @return <code>false</code> if there are no elements before the end of document.
+     */
+    private boolean parse(XmlPullParser xpp, XmlParseOptions options) throws XmlParseException {
+        try {
             int eventType = xpp.getEventType();
+            while (eventType != XmlPullParser.START_TAG) {
+                if (eventType == XmlPullParser.END_DOCUMENT) {
+                    return false;
+                }
+                eventType = xpp.next();
+            }
+        } catch (XmlPullParserException | IOException | RuntimeException exc) {
+            throw parseFailure(xpp, exc, "");
+        }
+        readElement(xpp, new XmlNamePool(), options);
+        return true;
+    }
 
-            boolean firstTag = true;
+    /**
+     * Parse all top level elements of input. Input with several root elements is not well-formed xml,
+     * but it's common for logs and concatenated messages. {@link #parse(Reader)} stops after the first root.
+     *
+     * @param reader reader to read xml from. it's not closed by this method.
+     * @return root elements in document order.
+     */
+    public static List<XmlNode> parseRoots(Reader reader) throws XmlParseException {
+        return withParser(reader, ROOTS_TASK);
+    }
 
-            while (eventType != XmlPullParser.END_DOCUMENT) {
-                if (currentNode == null) {
-                    continue;
+    /**
+     * Parse all top level elements of input, see {@link #parseRoots(Reader)}.
+     *
+     * @param inputStream stream to read xml from. it's not closed by this method.
+     * @param encoding input encoding or <code>null</code> to detect it from xml declaration.
+     */
+    public static List<XmlNode> parseRoots(InputStream inputStream, String encoding) throws XmlParseException {
+        return withParser(inputStream, encoding, ROOTS_TASK);
+    }
+
+    private static final ParserTask<List<XmlNode>> ROOTS_TASK = new ParserTask<List<XmlNode>>() {
+        @Override
+        public List<XmlNode> run(XmlPullParser xpp) throws XmlParseException {
+            ArrayList<XmlNode> roots = new ArrayList<XmlNode>();
+            while (true) {
+                XmlNode root = new XmlNode();
+                if (!root.parse(xpp, XmlParseOptions.DEFAULT)) {
+                    return roots;
                 }
+                roots.add(root);
+                try {
+                    // move from end tag of parsed root.
+                    xpp.next();
+                } catch (XmlPullParserException | IOException | RuntimeException exc) {
+                    throw parseFailure(xpp, exc, "");
+                }
+            }
+        }
+    };
+
+    /**
+     * Get path of node from document root, e.g. <code>/catalog/product</code>.
+     */
+    private static String elementPath(XmlNode node) {
+        if (node == null) {
+            return "";
+        }
+        ArrayList<String> names = new ArrayList<String>();
+        for (; node != null; node = node.mParent) {
+            names.add(node.mName);
+        }
+        StringBuilder path = new StringBuilder();
+        for (int i = names.size() - 1; i >= 0; i--) {
+            path.append('/').append(names.get(i));
+        }
+        return path.toString();
+    }
+
+    /**
+     * Read element parser is positioned at (<code>START_TAG</code>) with all its content into this node.
+     * Parser is left at the matching <code>END_TAG</code>.
+     *
+     * @param names pool element and attribute names are shared through.
+     * @throws XmlParseException with path of element being read when parsing fails.
+     */
+    void readElement(XmlPullParser xpp, XmlNamePool names, XmlParseOptions options) throws XmlParseException {
+        XmlNode currentNode = this;
+        PendingText pendingText = new PendingText(options.isLazyText() ? new XmlTextBuffer() : null);
+        XmlNodePool nodePool = options.getNodePool();
+        int depth = 0;
+
+        try {
+            int eventType = xpp.getEventType();
+            while (true) {
                 // Parsing start tag
                 if (eventType == XmlPullParser.START_TAG) {
-                    XmlNode node;
-                    if (firstTag) {
-                        node = this;
-                    } else {
-                        node = new XmlNode();
-                    }
-
-                    node.setName(xpp.getName());
-                    if (!firstTag) {
+                    XmlNode node = depth == 0 ? this : nodePool != null ? nodePool.obtain() : new XmlNode();
+                    node.setName(names.intern(xpp.getName()));
+                    if (depth > 0) {
                         currentNode.addChild(node);
                     }
-
                     for (int counter = 0; counter < xpp.getAttributeCount(); counter++) {
-                        node.setAttribute(xpp.getAttributeName(counter), xpp.getAttributeValue(counter));
+                        node.setAttribute(names.intern(xpp.getAttributeName(counter)), xpp.getAttributeValue(counter));
                     }
-
                     currentNode = node;
-                    firstTag = false;
+                    depth++;
                 }
                 // Parsing tag content (text)
-                if (eventType == XmlPullParser.TEXT) {
-                    currentNode.setValue(xpp.getText());
+                if (eventType == XmlPullParser.TEXT && (!options.isIgnoreWhitespace() || !xpp.isWhitespace())) {
+                    pendingText.append(currentNode, depth, xpp);
                 }
                 // Parsing end tag
                 if (eventType == XmlPullParser.END_TAG) {
+                    pendingText.commit(currentNode, depth);
+                    depth--;
+                    if (depth == 0) {
+                        return;
+                    }
                     currentNode = currentNode.getParent();
                 }
+                if (eventType == XmlPullParser.END_DOCUMENT) {
+                    throw new XmlParseException("Unexpected end of document", xpp.getLineNumber(),
+                            xpp.getColumnNumber(), elementPath(currentNode), null);
+                }
 
                 eventType = xpp.next();
             }
-        } catch (Exception exc) {
-            return false;
+        } catch (XmlPullParserException | IOException | RuntimeException exc) {
+            throw parseFailure(xpp, exc, elementPath(currentNode));
         }
-        return true;
     }
 
-    private boolean serialize(XmlSerializer serializer) {
-        try {
-            serializer.startTag("", mName);
-            for (String attrKey : mAttributes.keySet()) {
-                serializer.attribute("", attrKey, mAttributes.get(attrKey));
+    /**
+     * Write node and all its descendants to serializer, e.g. one created by {@link XmlBackend#newSerializer()}.
+     * Document start and end are left to caller, serializer is flushed.
+     */
+    public void serialize(XmlSerializer serializer) throws IOException {
+        // nodes from this one to current and index of next child to write for each of them.
+        ArrayList<XmlNode> stack = new ArrayList<XmlNode>();
+        ArrayList<Integer> positions = new ArrayList<Integer>();
+
+        serializeStartTag(serializer, this);
+        stack.add(this);
+        positions.add(0);
+
+        while (!stack.isEmpty()) {
+            int depth = stack.size() - 1;
+            XmlNode node = stack.get(depth);
+            int position = positions.get(depth);
+
+            if (position < node.getChildrenCount()) {
+                positions.set(depth, position + 1);
+                XmlNode child = node.mChildren.get(position);
+                serializeStartTag(serializer, child);
+                stack.add(child);
+                positions.add(0);
+            } else {
+                if (!node.hasChild()) {
+                    serializer.text(node.mValue != null ? node.mValue.toString() : "");
+                }
+                serializer.endTag("", node.mName);
+                stack.remove(depth);
+                positions.remove(depth);
             }
-            for (XmlNode aMChildren : mChildren) {
-                aMChildren.serialize(serializer);
+        }
+        serializer.flush();
+    }
+
+    private static void serializeStartTag(XmlSerializer serializer, XmlNode node) throws IOException {
+        serializer.startTag("", node.mName);
+        XmlAttributes attributes = node.mAttributes;
+        int attrCount = attributes != null ? attributes.size() : 0;
+        for (int counter = 0; counter < attrCount; counter++) {
+            serializer.attribute("", attributes.getName(counter), attributes.getValue(counter));
+        }
+    }
+
+    /**
+     * Write node and all its descendants as xml to stream in utf-8. Stream is flushed, but not closed.
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        writeTo(new OutputStreamWriter(outputStream, "UTF-8"));
+    }
+
+    /**
+     * Write node and all its descendants as xml. Tree is walked with explicit stack, so deep trees don't
+     * overflow the thread stack, and output goes to writer through bounded buffer. Writer is flushed, but not closed.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        Writer out = writer instanceof BufferedWriter || writer instanceof StringWriter
+                ? writer : new BufferedWriter(writer, WRITE_BUFFER_SIZE);
+
+        // nodes from root to current one and index of next child to write for each of them.
+        ArrayList<XmlNode> stack = new ArrayList<XmlNode>();
+        int[] positions = new int[16];
+
+        if (!hasChild()) {
+            writeLeaf(out, this);
+            out.flush();
+            return;
+        }
+        writeStartTag(out, this);
+        stack.add(this);
+
+        while (!stack.isEmpty()) {
+            int depth = stack.size() - 1;
+            XmlNode node = stack.get(depth);
+            int position = positions[depth];
+
+            if (position < node.getChildrenCount()) {
+                positions[depth] = position + 1;
+                XmlNode child = node.mChildren.get(position);
+                if (!child.hasChild()) {
+                    writeLeaf(out, child);
+                    continue;
+                }
+                writeStartTag(out, child);
+                if (depth + 1 == positions.length) {
+                    int[] grown = new int[positions.length * 2];
+                    System.arraycopy(positions, 0, grown, 0, positions.length);
+                    positions = grown;
+                }
+                positions[depth + 1] = 0;
+                stack.add(child);
+            } else {
+                writeEndTag(out, node);
+                stack.remove(depth);
             }
-            if (mChildren.size() == 0) {
-                serializer.text(mValue);
+        }
+        out.flush();
+    }
+
+    private static void writeLeaf(Writer out, XmlNode node) throws IOException {
+        writeStartTag(out, node);
+        writeEscaped(out, node.mValue, false);
+        writeEndTag(out, node);
+    }
+
+    private static void writeStartTag(Writer out, XmlNode node) throws IOException {
+        out.write('<');
+        out.write(node.mName);
+        XmlAttributes attributes = node.mAttributes;
+        int attrCount = attributes != null ? attributes.size() : 0;
+        for (int counter = 0; counter < attrCount; counter++) {
+            out.write(' ');
+            out.write(attributes.getName(counter));
+            out.write("=\"");
+            writeEscaped(out, attributes.getValue(counter), true);
+            out.write('"');
+        }
+        out.write('>');
+    }
+
+    private static void writeEndTag(Writer out, XmlNode node) throws IOException {
+        out.write("</");
+        out.write(node.mName);
+        out.write('>');
+    }
+
+    private static void writeEscaped(Writer out, CharSequence text, boolean attribute) throws IOException {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            String replacement;
+            switch (text.charAt(i)) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = attribute ? "&quot;" : null;
+                    break;
+                case '\n':
+                    replacement = attribute ? "&#10;" : null;
+                    break;
+                case '\r':
+                    replacement = "&#13;";
+                    break;
+                case '\t':
+                    replacement = attribute ? "&#9;" : null;
+                    break;
+                default:
+                    replacement = null;
             }
-            serializer.endTag("", mName);
-            if (mParent == null) {
-                serializer.endDocument();
+            if (replacement != null) {
+                writeRange(out, text, start, i - start);
+                out.write(replacement);
+                start = i + 1;
             }
-            return true;
-        } catch (Exception e) {
-            return false;
+        }
+        writeRange(out, text, start, length - start);
+    }
+
+    private static void writeRange(Writer out, CharSequence text, int start, int length) throws IOException {
+        if (text instanceof String) {
+            out.write((String) text, start, length);
+        } else if (text instanceof XmlTextBuffer.Slice) {
+            ((XmlTextBuffer.Slice) text).write(out, start, length);
+        } else {
+            out.append(text, start, start + length);
         }
     }
 
+    /**
+     * Write tree in compact binary format, which is much faster to read than xml.
+     * Stream is flushed, but not closed.
+     */
+    public void writeBinary(OutputStream outputStream) throws IOException {
+        XmlBinaryFormat.write(this, outputStream);
+    }
+
+    /**
+     * Read tree written by {@link #writeBinary(OutputStream)}. Stream may be read past the end of the tree.
+     *
+     * @throws IOException if stream can't be read or it's not a binary tree.
+     */
+    public static XmlNode readBinary(InputStream inputStream) throws IOException {
+        return XmlBinaryFormat.read(inputStream);
+    }
+
     public String toString() {
-        XmlSerializer serializer = Xml.newSerializer();
         StringWriter writer = new StringWriter();
         try {
-            serializer.setOutput(writer);
-        } catch (Exception exc) {
+            writeTo(writer);
+        } catch (IOException exc) {
             return "";
         }
-
-        return serialize(serializer) ? writer.toString() : "";
+        return writer.toString();
     }
 
     public void setName(String name) {
+        checkWritable();
         mName = name;
+        if (mSubtreeIndex != null) {
+            mSubtreeIndex.invalidate();
+        }
     }
 
     public String getName() {
@@ -140,14 +689,31 @@ public class XmlNode {
     }
 
     public void setValue(String value) {
+        checkWritable();
         mValue = value;
     }
 
     public String getValue() {
+        CharSequence value = mValue;
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        // value is a slice of text buffer, keep created string for subsequent calls.
+        String string = value.toString();
+        mValue = string;
+        return string;
+    }
+
+    /**
+     * Get value without creating a <code>String</code> for it, useful to check or compare value, e.g. with
+     * <code>String.contentEquals()</code>. Returned sequence must not be kept after node is modified.
+     */
+    public CharSequence getValueSequence() {
         return mValue;
     }
 
     public void setParent(XmlNode parent) {
+        checkWritable();
         if (null != parent) {
             parent.addChild(this);
         } else {
@@ -164,47 +730,83 @@ public class XmlNode {
     }
 
     public void setAttribute(String attrName, String attrValue) {
+        checkWritable();
+        if (mAttributes == null) {
+            mAttributes = new XmlAttributes();
+        }
         mAttributes.put(attrName, attrValue);
     }
 
     public void eraseAttribute(String attrName) {
-        mAttributes.remove(attrName);
+        checkWritable();
+        if (mAttributes != null) {
+            mAttributes.remove(attrName);
+        }
     }
 
     public String getAttribute(String attrName) {
-        return mAttributes.get(attrName);
+        return mAttributes != null ? mAttributes.get(attrName) : null;
     }
 
     public long getAttributeLongValue(String attrName) {
-        try {
-            return Long.parseLong(mAttributes.get(attrName));
-        } catch (NumberFormatException nfe) {
-            return 0;
-        }
+        return getAttributeLongValue(attrName, 0);
+    }
+
+    public long getAttributeLongValue(String attrName, long defaultValue) {
+        return XmlValues.parseLong(getAttribute(attrName), defaultValue);
     }
 
     public int getAttributeIntValue(String attrName) {
-        try {
-            return Integer.parseInt(mAttributes.get(attrName));
-        } catch (NumberFormatException nfe) {
-            return 0;
-        }
+        return getAttributeIntValue(attrName, 0);
+    }
+
+    public int getAttributeIntValue(String attrName, int defaultValue) {
+        return XmlValues.parseInt(getAttribute(attrName), defaultValue);
+    }
+
+    public float getAttributeFloatValue(String attrName, float defaultValue) {
+        return XmlValues.parseFloat(getAttribute(attrName), defaultValue);
+    }
+
+    public double getAttributeDoubleValue(String attrName, double defaultValue) {
+        return XmlValues.parseDouble(getAttribute(attrName), defaultValue);
+    }
+
+    public <E extends Enum<E>> E getAttributeEnumValue(String attrName, Class<E> enumClass, E defaultValue) {
+        return XmlValues.parseEnum(getAttribute(attrName), enumClass, defaultValue);
     }
 
     public boolean getAttributeBooleanValue(String attrName) {
-        return Boolean.parseBoolean(mAttributes.get(attrName));
+        return Boolean.parseBoolean(getAttribute(attrName));
     }
 
     public void addChild(XmlNode child) {
+        checkWritable();
+        child.checkWritable();
         child.mParent = this;
-        mChildren.add(child);
+        if (mChildren == null) {
+            mChildren = new ChildList(this);
+            mChildrenMap = new HashMap<String, Integer>();
+        }
+        mChildren.append(child);
         mNullNode = false;
-        if (!mChildrenMap.containsKey(child.getName())) {
+        if (mChildrenMap != null && !mChildrenMap.containsKey(child.getName())) {
             mChildrenMap.put(child.getName(), mChildren.size() - 1);
         }
+        if (mChildrenByName != null) {
+            addToNameIndex(mChildrenByName, child);
+        }
+        if (mSubtreeIndex != null) {
+            mSubtreeIndex.onChildAdded(this, child);
+        } else if (child.mSubtreeIndex != null) {
+            // child is not a part of indexed document anymore.
+            child.mSubtreeIndex.invalidate();
+            clearSubtreeIndex(child);
+        }
     }
 
     public void addChild(String name, String value) {
+        checkWritable();
         XmlNode node = new XmlNode();
         node.mName = name;
         node.mValue = value;
@@ -213,30 +815,104 @@ public class XmlNode {
     }
 
     public boolean isChildExists(String name) {
-        return mChildrenMap.containsKey(name);
+        HashMap<String, Integer> childrenMap = childrenMap();
+        return childrenMap != null && childrenMap.containsKey(name);
     }
 
     public XmlNode getChild(String name) {
-        if (mChildrenMap.containsKey(name)) {
-            return mChildren.get(mChildrenMap.get(name));
+        HashMap<String, Integer> childrenMap = childrenMap();
+        Integer index = childrenMap != null ? childrenMap.get(name) : null;
+        if (index != null) {
+            return mChildren.get(index);
         }
-        return new XmlNode();
+        return NULL_NODE;
+    }
+
+    private HashMap<String, Integer> childrenMap() {
+        if (mChildrenMap == null && mChildren != null) {
+            HashMap<String, Integer> childrenMap = new HashMap<String, Integer>();
+            for (int i = 0; i < mChildren.size(); i++) {
+                String name = mChildren.get(i).getName();
+                if (!childrenMap.containsKey(name)) {
+                    childrenMap.put(name, i);
+                }
+            }
+            mChildrenMap = childrenMap;
+        }
+        return mChildrenMap;
     }
 
     public boolean hasChild() {
-        return !mChildren.isEmpty();
+        return mChildren != null && !mChildren.isEmpty();
     }
 
     public XmlNode getChild(int index) {
-        return mChildren.get(index);
+        return children().get(index);
     }
 
+    /**
+     * Get modifiable children list. List is allocated here if node has no children yet, its array is allocated
+     * only when something is added. Modifications of the list drop lookups by name and mark document index stale,
+     * reading it doesn't.
+     * For {@link #NULL_NODE} detached empty list is returned, for frozen node detached copy of its children.
+     */
     public ArrayList<XmlNode> getChildren() {
+        if (this == NULL_NODE) {
+            return new ArrayList<XmlNode>();
+        }
+        if (mFrozen) {
+            return new ArrayList<XmlNode>(children());
+        }
+        if (mChildren == null) {
+            mChildren = new ChildList(this);
+        }
         return mChildren;
     }
 
+    // called by children list when it's modified by caller of getChildren().
+    private void onChildrenModified() {
+        mChildrenMap = null;
+        mChildrenByName = null;
+        if (mSubtreeIndex != null) {
+            mSubtreeIndex.invalidate();
+        }
+    }
+
+    /**
+     * Get all direct children with specified name in document order.
+     *
+     * @param name children name.
+     * @return unmodifiable list of children, empty if there are no children with this name.
+     */
+    public List<XmlNode> getChildren(String name) {
+        if (mChildren == null) {
+            return Collections.emptyList();
+        }
+        if (mChildrenByName == null) {
+            HashMap<String, ArrayList<XmlNode>> index = new HashMap<String, ArrayList<XmlNode>>();
+            for (XmlNode child : mChildren) {
+                addToNameIndex(index, child);
+            }
+            mChildrenByName = index;
+        }
+        ArrayList<XmlNode> children = mChildrenByName.get(name);
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(children);
+    }
+
+    private static void addToNameIndex(HashMap<String, ArrayList<XmlNode>> index, XmlNode child) {
+        ArrayList<XmlNode> children = index.get(child.getName());
+        if (children == null) {
+            children = new ArrayList<XmlNode>(2);
+            index.put(child.getName(), children);
+        }
+        children.add(child);
+    }
+
     public int getChildrenCount() {
-        return mChildren.size();
+        return mChildren != null ? mChildren.size() : 0;
     }
 
     public String getChildValue(String name) {
@@ -244,50 +920,573 @@ public class XmlNode {
     }
 
     /**
-     * Find node recursive.
+     * Find descendant with specified name. Direct child is preferred, otherwise children are searched the same way
+     * one by one, so e.g. for <code>&lt;root&gt;&lt;a&gt;&lt;t/&gt;&lt;/a&gt;&lt;t/&gt;&lt;/root&gt;</code>
+     * the second <code>t</code> is found. If document index is built (see {@link #buildIndex()}) no tree walk
+     * is needed, result is the same.
      *
      * @param name node name.
-     * @return node with specified name or default not initialized instance of <code>XmlNode</code>.
+     * @return node with specified name or {@link #NULL_NODE} if it is not found.
      */
     public XmlNode findNode(String name) {
-        if (mChildrenMap.containsKey(name)) {
-            return getChild(name);
+        if (isIndexed()) {
+            // searched node is a child of one of the ancestors of the first descendant with the name,
+            // the one closest to this node wins.
+            XmlNode first = mSubtreeIndex.findFirst(this, name);
+            XmlNode result = first;
+            for (XmlNode node = first.mParent; first != NULL_NODE && node != mParent; node = node.mParent) {
+                XmlNode child = node.getChild(name);
+                if (child != NULL_NODE) {
+                    result = child;
+                }
+            }
+            return result;
+        }
+
+        ArrayList<XmlNode> stack = new ArrayList<XmlNode>();
+        stack.add(this);
+        while (!stack.isEmpty()) {
+            XmlNode node = stack.remove(stack.size() - 1);
+            int childCount = node.getChildrenCount();
+            for (int i = 0; i < childCount; i++) {
+                if (node.mChildren.get(i).mName.equals(name)) {
+                    return node.mChildren.get(i);
+                }
+            }
+            for (int i = childCount - 1; i >= 0; i--) {
+                stack.add(node.mChildren.get(i));
+            }
         }
+        return NULL_NODE;
+    }
 
-        for(XmlNode child : mChildren) {
+    /**
+     * Check whether node is covered by up to date document index, then its index position is valid.
+     */
+    boolean isIndexed() {
+        return mSubtreeIndex != null && mSubtreeIndex.contains(this);
+    }
 
-            if (!child.hasChild()) {
-                continue;
+    /**
+     * Find all descendants with specified name.
+     *
+     * @param name node name.
+     * @return nodes in document order, empty list if nothing is found.
+     */
+    public List<XmlNode> findNodes(String name) {
+        if (isIndexed()) {
+            return mSubtreeIndex.findAll(this, name);
+        }
+
+        ArrayList<XmlNode> result = new ArrayList<XmlNode>();
+        ArrayList<XmlNode> stack = new ArrayList<XmlNode>();
+        for (int i = getChildrenCount() - 1; i >= 0; i--) {
+            stack.add(mChildren.get(i));
+        }
+        while (!stack.isEmpty()) {
+            XmlNode node = stack.remove(stack.size() - 1);
+            if (node.mName.equals(name)) {
+                result.add(node);
             }
+            for (int i = node.getChildrenCount() - 1; i >= 0; i--) {
+                stack.add(node.mChildren.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Build name index for the whole document this node belongs to. After that {@link #findNode(String)} and
+     * {@link #findNodes(String)} are hash lookups with binary search instead of tree walks.
+     * Index is kept up to date by tree modifications.
+     */
+    public void buildIndex() {
+        if (mFrozen) {
+            // frozen tree is indexed when created.
+            return;
+        }
+        checkWritable();
+        XmlNode root = this;
+        while (root.mParent != null) {
+            root = root.mParent;
+        }
+        new XmlNodeIndex(root);
+    }
+
+    /**
+     * Remove document name index from the tree this node belongs to.
+     */
+    public void dropIndex() {
+        if (mSubtreeIndex != null) {
+            checkWritable();
+            clearSubtreeIndex(mSubtreeIndex.getRoot());
+        }
+    }
+
+    /**
+     * Create read-only copy of this subtree which can be read by many threads without locking.
+     * Copy is compact: collections are sized exactly, equal names share one instance and values are plain strings,
+     * so it doesn't keep lazy text buffer alive. Child lookups and document name index are built upfront,
+     * reads never modify the tree. Index only speeds up {@link #findNode(String)} and {@link #findNodes(String)},
+     * they return the same nodes as on the source tree. Any modification throws <code>UnsupportedOperationException</code>,
+     * {@link #getChildren()} returns detached copy.
+     * <p>
+     * Frozen copy has no parent. As any object it must be published to other threads safely,
+     * e.g. through <code>final</code> or <code>volatile</code> field.
+     *
+     * @return frozen copy, or this node if it's already frozen.
+     */
+    public XmlNode freeze() {
+        if (mFrozen || this == NULL_NODE) {
+            return this;
+        }
+        XmlNode root = frozenCopy(true);
+        new XmlNodeIndex(root);
+        return root;
+    }
+
+    public boolean isFrozen() {
+        return mFrozen;
+    }
+
+    /**
+     * Frozen copy without parent links and document index, such subtrees can be shared by several trees.
+     * Used by {@link XmlSharedTree}.
+     */
+    XmlNode freezeDetached() {
+        return this == NULL_NODE ? this : frozenCopy(false);
+    }
+
+    /**
+     * Detached frozen copy with changed value, children and attributes are shared with this node.
+     */
+    XmlNode withValue(String value) {
+        XmlNode copy = shallowFrozenCopy();
+        copy.mValue = value;
+        return copy;
+    }
 
-            XmlNode xmlNode = child.findNode(name);
-            if (!xmlNode.isNullNode()) {
-                return xmlNode;
+    /**
+     * Detached frozen copy with changed attribute, children are shared with this node.
+     */
+    XmlNode withAttribute(String attrName, String attrValue) {
+        XmlNode copy = shallowFrozenCopy();
+        copy.mAttributes = mAttributes != null ? mAttributes.copy(null) : new XmlAttributes();
+        copy.mAttributes.put(attrName, attrValue);
+        return copy;
+    }
+
+    /**
+     * Detached frozen copy with replaced child, other children are shared with this node.
+     *
+     * @param index child position, children count to append child.
+     * @param child detached frozen node.
+     */
+    XmlNode withChild(int index, XmlNode child) {
+        XmlNode copy = shallowFrozenCopy();
+        int childCount = getChildrenCount();
+        copy.mChildren = new ChildList(copy, index == childCount ? childCount + 1 : childCount);
+        for (int i = 0; i < childCount; i++) {
+            copy.mChildren.append(i == index ? child : mChildren.get(i));
+        }
+        if (index == childCount) {
+            copy.mChildren.append(child);
+            copy.mNullNode = false;
+        }
+        copy.indexFrozenChildren();
+        return copy;
+    }
+
+    private XmlNode shallowFrozenCopy() {
+        XmlNode copy = new XmlNode();
+        copy.mName = mName;
+        copy.mValue = mValue != null ? mValue.toString() : null;
+        copy.mNullNode = mNullNode;
+        copy.mAttributes = mAttributes;
+        copy.mChildren = mChildren;
+        copy.mChildrenMap = mChildrenMap;
+        copy.mChildrenByName = mChildrenByName;
+        copy.mFrozen = true;
+        return copy;
+    }
+
+    private XmlNode frozenCopy(boolean linkParents) {
+        XmlNamePool names = new XmlNamePool(Integer.MAX_VALUE);
+        XmlNode root = new XmlNode();
+        root.mName = names.intern(mName);
+        ArrayList<XmlNode> sources = new ArrayList<XmlNode>();
+        ArrayList<XmlNode> copies = new ArrayList<XmlNode>();
+        sources.add(this);
+        copies.add(root);
+        while (!sources.isEmpty()) {
+            XmlNode source = sources.remove(sources.size() - 1);
+            XmlNode copy = copies.remove(copies.size() - 1);
+            copy.mValue = source.mValue != null ? source.mValue.toString() : null;
+            copy.mNullNode = source.mNullNode;
+            if (source.mAttributes != null && source.mAttributes.size() > 0) {
+                copy.mAttributes = source.mAttributes.copy(names);
+            }
+            int childCount = source.getChildrenCount();
+            if (childCount > 0) {
+                copy.mChildren = new ChildList(copy, childCount);
+                for (int i = 0; i < childCount; i++) {
+                    XmlNode sourceChild = source.mChildren.get(i);
+                    XmlNode child = new XmlNode();
+                    child.mName = names.intern(sourceChild.mName);
+                    if (linkParents) {
+                        child.mParent = copy;
+                    }
+                    copy.mChildren.append(child);
+                    sources.add(sourceChild);
+                    copies.add(child);
+                }
+                copy.indexFrozenChildren();
             }
+            copy.mFrozen = true;
         }
+        return root;
+    }
 
-        return new XmlNode();
+    // frozen nodes never build child lookups lazily, so reads don't write.
+    private void indexFrozenChildren() {
+        mChildrenMap = new HashMap<String, Integer>();
+        mChildrenByName = new HashMap<String, ArrayList<XmlNode>>();
+        for (int i = 0; i < mChildren.size(); i++) {
+            XmlNode child = mChildren.get(i);
+            if (!mChildrenMap.containsKey(child.mName)) {
+                mChildrenMap.put(child.mName, i);
+            }
+            addToNameIndex(mChildrenByName, child);
+        }
     }
 
-    public long getChildLongValue(String name) {
-        try {
-            return Long.parseLong(getChildValue(name));
-        } catch (NumberFormatException nfe) {
-            return 0;
+    /**
+     * Clear node so it can be filled again, e.g. by next parse call. Descendants are cleared and put into pool,
+     * their collections are reused by nodes obtained from it later. Descendants and lists returned by this node
+     * must not be used after that. Node must not be a child of another node.
+     */
+    public void recycle(XmlNodePool pool) {
+        checkWritable();
+        if (mParent != null) {
+            throw new IllegalStateException("Node is a child of " + mParent.getName());
+        }
+        dropIndex();
+        ArrayList<XmlNode> stack = new ArrayList<XmlNode>();
+        for (int i = getChildrenCount() - 1; i >= 0; i--) {
+            stack.add(mChildren.get(i));
+        }
+        clear();
+        while (!stack.isEmpty()) {
+            XmlNode node = stack.remove(stack.size() - 1);
+            for (int i = node.getChildrenCount() - 1; i >= 0; i--) {
+                stack.add(node.mChildren.get(i));
+            }
+            node.clear();
+            pool.add(node);
         }
     }
 
-    public int getChildIntValue(String name) {
-        try {
-            return Integer.parseInt(getChildValue(name));
-        } catch (NumberFormatException nfe) {
-            return 0;
+    // reset to state of new node, keeping allocated collections.
+    private void clear() {
+        mName = "";
+        mValue = "";
+        mNullNode = true;
+        mParent = null;
+        if (mAttributes != null) {
+            mAttributes.clear();
+        }
+        if (mChildren != null) {
+            mChildren.clearSilently();
         }
+        if (mChildrenMap != null) {
+            mChildrenMap.clear();
+        }
+        mChildrenByName = null;
+    }
+
+    private static void clearSubtreeIndex(XmlNode subtree) {
+        ArrayList<XmlNode> stack = new ArrayList<XmlNode>();
+        stack.add(subtree);
+        while (!stack.isEmpty()) {
+            XmlNode node = stack.remove(stack.size() - 1);
+            node.mSubtreeIndex = null;
+            for (int i = node.getChildrenCount() - 1; i >= 0; i--) {
+                stack.add(node.mChildren.get(i));
+            }
+        }
+    }
+
+    void setSubtreeIndex(XmlNodeIndex index) {
+        mSubtreeIndex = index;
+    }
+
+    public long getChildLongValue(String name) {
+        return getChildLongValue(name, 0);
+    }
+
+    public long getChildLongValue(String name, long defaultValue) {
+        return XmlValues.parseLong(getChild(name).getValueSequence(), defaultValue);
+    }
+
+    public int getChildIntValue(String name) {
+        return getChildIntValue(name, 0);
+    }
+
+    public int getChildIntValue(String name, int defaultValue) {
+        return XmlValues.parseInt(getChild(name).getValueSequence(), defaultValue);
+    }
+
+    public float getChildFloatValue(String name, float defaultValue) {
+        return XmlValues.parseFloat(getChild(name).getValueSequence(), defaultValue);
+    }
+
+    public double getChildDoubleValue(String name, double defaultValue) {
+        return XmlValues.parseDouble(getChild(name).getValueSequence(), defaultValue);
+    }
+
+    public <E extends Enum<E>> E getChildEnumValue(String name, Class<E> enumClass, E defaultValue) {
+        return XmlValues.parseEnum(getChild(name).getValueSequence(), enumClass, defaultValue);
     }
 
     public boolean getChildBooleanValue(String name) {
-        return Boolean.parseBoolean(getChildValue(name));
+        return XmlValues.parseBoolean(getChild(name).getValueSequence());
     }
 
-}
+    private void checkWritable() {
+        if (this == NULL_NODE) {
+            throw new UnsupportedOperationException("Null node is read-only");
+        }
+        if (mFrozen) {
+            throw new UnsupportedOperationException("Frozen node is read-only");
+        }
+    }
+
+    XmlAttributes getAttributes() {
+        return mAttributes;
+    }
+
+    // read-only view, shared empty instance is used for nodes without children.
+    private List<XmlNode> children() {
+        return mChildren != null ? mChildren : Collections.<XmlNode>emptyList();
+    }
+
+    /**
+     * Children list of node. Changes made through it by caller of {@link #getChildren()} are reported to the node,
+     * so lookups built from the list are dropped only when it's really modified.
+     */
+    /**
+     * Text of elements being parsed. Text of element comes in several parts when it's mixed with child elements:
+     * the first part becomes node value right away, the following ones are collected per depth
+     * and the whole text is set once the element is closed, so parts are never concatenated one by one.
+     * With lazy text the value stays a single slice of document buffer.
+     */
+    private static class PendingText {
+
+        // document text buffer, null if values are strings.
+        private final XmlTextBuffer mTextBuffer;
+        // text collected for open element at each depth, builders are reused by following elements.
+        private StringBuilder[] mParts = new StringBuilder[16];
+        // start and length holder for XmlPullParser.getTextCharacters().
+        private final int[] mHolder = new int[2];
 
+        PendingText(XmlTextBuffer textBuffer) {
+            mTextBuffer = textBuffer;
+        }
+
+        void append(XmlNode node, int depth, XmlPullParser xpp) throws XmlPullParserException {
+            StringBuilder parts = depth < mParts.length ? mParts[depth] : null;
+            if (parts == null || parts.length() == 0) {
+                CharSequence value = node.mValue;
+                if (mTextBuffer != null) {
+                    char[] chars = xpp.getTextCharacters(mHolder);
+                    XmlTextBuffer.Slice slice = mTextBuffer.append(value, chars, mHolder[0], mHolder[1]);
+                    if (slice != null) {
+                        node.mValue = slice;
+                        return;
+                    }
+                } else if (value == null || value.length() == 0) {
+                    node.mValue = xpp.getText();
+                    return;
+                }
+                parts = parts(depth);
+                parts.append(value);
+            }
+            char[] chars = xpp.getTextCharacters(mHolder);
+            parts.append(chars, mHolder[0], mHolder[1]);
+        }
+
+        void commit(XmlNode node, int depth) {
+            StringBuilder parts = depth < mParts.length ? mParts[depth] : null;
+            if (parts != null && parts.length() > 0) {
+                node.mValue = mTextBuffer != null ? mTextBuffer.add(parts) : parts.toString();
+                parts.setLength(0);
+            }
+        }
+
+        private StringBuilder parts(int depth) {
+            if (depth >= mParts.length) {
+                StringBuilder[] grown = new StringBuilder[Math.max(mParts.length * 2, depth + 1)];
+                System.arraycopy(mParts, 0, grown, 0, mParts.length);
+                mParts = grown;
+            }
+            if (mParts[depth] == null) {
+                mParts[depth] = new StringBuilder();
+            }
+            return mParts[depth];
+        }
+    }
+
+    private static class ChildList extends ArrayList<XmlNode> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final XmlNode mOwner;
+
+        ChildList(XmlNode owner) {
+            mOwner = owner;
+        }
+
+        ChildList(XmlNode owner, int capacity) {
+            super(capacity);
+            mOwner = owner;
+        }
+
+        // changes made by node itself, it updates its lookups on its own.
+        void append(XmlNode child) {
+            super.add(child);
+        }
+
+        void clearSilently() {
+            super.clear();
+        }
+
+        @Override
+        public boolean add(XmlNode child) {
+            super.add(child);
+            mOwner.onChildrenModified();
+            return true;
+        }
+
+        @Override
+        public void add(int index, XmlNode child) {
+            super.add(index, child);
+            mOwner.onChildrenModified();
+        }
+
+        @Override
+        public XmlNode set(int index, XmlNode child) {
+            XmlNode previous = super.set(index, child);
+            mOwner.onChildrenModified();
+            return previous;
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends XmlNode> children) {
+            boolean modified = super.addAll(children);
+            mOwner.onChildrenModified();
+            return modified;
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends XmlNode> children) {
+            boolean modified = super.addAll(index, children);
+            mOwner.onChildrenModified();
+            return modified;
+        }
+
+        @Override
+        public XmlNode remove(int index) {
+            XmlNode removed = super.remove(index);
+            mOwner.onChildrenModified();
+            return removed;
+        }
+
+        @Override
+        public boolean remove(Object child) {
+            boolean modified = super.remove(child);
+            mOwner.onChildrenModified();
+            return modified;
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> children) {
+            boolean modified = super.removeAll(children);
+            mOwner.onChildrenModified();
+            return modified;
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> children) {
+            boolean modified = super.retainAll(children);
+            mOwner.onChildrenModified();
+            return modified;
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super XmlNode> filter) {
+            boolean modified = super.removeIf(filter);
+            mOwner.onChildrenModified();
+            return modified;
+        }
+
+        @Override
+        public void replaceAll(UnaryOperator<XmlNode> operator) {
+            super.replaceAll(operator);
+            mOwner.onChildrenModified();
+        }
+
+        @Override
+        public void sort(Comparator<? super XmlNode> comparator) {
+            super.sort(comparator);
+            mOwner.onChildrenModified();
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            mOwner.onChildrenModified();
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            super.removeRange(fromIndex, toIndex);
+            mOwner.onChildrenModified();
+        }
+    }
+
+    /**
+     * Stream over buffer content, used for direct buffers which can't be wrapped into byte array stream.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer mBuffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, mBuffer.remaining());
+            mBuffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+    }
+
+}
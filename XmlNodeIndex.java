@@ -0,0 +1,198 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Document level name index for {@link XmlNode} tree. Keeps all nodes of the tree grouped by name in document order.
+ * Each node knows its position in document order and the end of its subtree, so descendants of any node are found
+ * by binary search in the list of nodes with the same name.
+ * Index is updated by {@link XmlNode#addChild(XmlNode)} when node is appended to the end of document,
+ * any other modification marks it stale and it's rebuilt on next lookup.
+ */
+class XmlNodeIndex {
+
+    private final XmlNode mRoot;
+
+    private HashMap<String, ArrayList<XmlNode>> mNodes;
+    // number of positions given out, root is at 0.
+    private int mCount;
+    // nodes positioned by previous builds are not a part of the document anymore unless they are positioned again.
+    private int mGeneration = 0;
+    private boolean mStale = true;
+
+    XmlNodeIndex(XmlNode root) {
+        mRoot = root;
+        rebuild();
+    }
+
+    XmlNode getRoot() {
+        return mRoot;
+    }
+
+    void invalidate() {
+        mStale = true;
+    }
+
+    /**
+     * Check whether node is a part of indexed document, e.g. it's not removed from it through children list.
+     */
+    boolean contains(XmlNode node) {
+        if (mStale) {
+            rebuild();
+        }
+        return node.mIndexGeneration == mGeneration;
+    }
+
+    /**
+     * Register child which is just added to parent.
+     */
+    void onChildAdded(XmlNode parent, XmlNode child) {
+        if (mStale || !isLastInDocument(parent)) {
+            // node is inserted in the middle of document, order can't be kept by appending.
+            attach(child);
+            mStale = true;
+            return;
+        }
+        addSubtree(child);
+        // subtree is appended to the end of document, so it's the end of all ancestors too.
+        for (XmlNode node = parent; node != null; node = node.getParent()) {
+            node.mIndexEnd = mCount;
+            if (node == mRoot) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Find first descendant of node with specified name in document order.
+     *
+     * @return found node or {@link XmlNode#NULL_NODE}.
+     */
+    XmlNode findFirst(XmlNode node, String name) {
+        ArrayList<XmlNode> nodes = lookup(name);
+        if (nodes != null) {
+            int first = lowerBound(nodes, node.mIndexPosition + 1);
+            if (first < nodes.size() && nodes.get(first).mIndexPosition < node.mIndexEnd) {
+                return nodes.get(first);
+            }
+        }
+        return XmlNode.NULL_NODE;
+    }
+
+    /**
+     * Find all descendants of node with specified name in document order.
+     */
+    List<XmlNode> findAll(XmlNode node, String name) {
+        ArrayList<XmlNode> nodes = lookup(name);
+        if (nodes == null) {
+            return Collections.emptyList();
+        }
+        if (node == mRoot) {
+            return Collections.unmodifiableList(nodes);
+        }
+        int first = lowerBound(nodes, node.mIndexPosition + 1);
+        int end = lowerBound(nodes, node.mIndexEnd);
+        return new ArrayList<XmlNode>(nodes.subList(first, end));
+    }
+
+    private ArrayList<XmlNode> lookup(String name) {
+        if (mStale) {
+            rebuild();
+        }
+        return mNodes.get(name);
+    }
+
+    private void rebuild() {
+        mNodes = new HashMap<String, ArrayList<XmlNode>>();
+        mCount = 0;
+        mGeneration++;
+        addSubtree(mRoot);
+        mStale = false;
+    }
+
+    /**
+     * Give positions to subtree nodes starting from the current end of document.
+     */
+    private void addSubtree(XmlNode subtree) {
+        // nodes from subtree root to current one and index of the next child to visit for each of them.
+        ArrayList<XmlNode> nodes = new ArrayList<XmlNode>();
+        ArrayList<Integer> positions = new ArrayList<Integer>();
+        enter(subtree);
+        nodes.add(subtree);
+        positions.add(0);
+        while (!nodes.isEmpty()) {
+            int depth = nodes.size() - 1;
+            XmlNode node = nodes.get(depth);
+            int position = positions.get(depth);
+            if (position == node.getChildrenCount()) {
+                node.mIndexEnd = mCount;
+                nodes.remove(depth);
+                positions.remove(depth);
+                continue;
+            }
+            positions.set(depth, position + 1);
+            XmlNode child = node.getChild(position);
+            enter(child);
+            nodes.add(child);
+            positions.add(0);
+        }
+    }
+
+    private void enter(XmlNode node) {
+        node.setSubtreeIndex(this);
+        node.mIndexPosition = mCount++;
+        node.mIndexGeneration = mGeneration;
+        if (node != mRoot) {
+            ArrayList<XmlNode> nodes = mNodes.get(node.getName());
+            if (nodes == null) {
+                nodes = new ArrayList<XmlNode>(2);
+                mNodes.put(node.getName(), nodes);
+            }
+            nodes.add(node);
+        }
+    }
+
+    private void attach(XmlNode subtree) {
+        ArrayList<XmlNode> stack = new ArrayList<XmlNode>();
+        stack.add(subtree);
+        while (!stack.isEmpty()) {
+            XmlNode node = stack.remove(stack.size() - 1);
+            node.setSubtreeIndex(this);
+            for (int i = node.getChildrenCount() - 1; i >= 0; i--) {
+                stack.add(node.getChild(i));
+            }
+        }
+    }
+
+    /**
+     * Check whether node is the last one in document order, excluding the child just appended to it.
+     */
+    private boolean isLastInDocument(XmlNode parent) {
+        for (XmlNode node = parent; node != mRoot; node = node.getParent()) {
+            XmlNode ancestor = node.getParent();
+            if (ancestor == null || ancestor.getChild(ancestor.getChildrenCount() - 1) != node) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Index of the first node with position not less than specified one.
+     */
+    private static int lowerBound(ArrayList<XmlNode> nodes, int position) {
+        int low = 0;
+        int high = nodes.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (nodes.get(middle).mIndexPosition < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+}
@@ -0,0 +1,66 @@
+import java.util.ArrayList;
+
+/**
+ * Pool of released nodes for loops which parse and drop many small trees, e.g. one per incoming message.
+ * Nodes keep their attribute and children collections when they are released, so parsing into pooled nodes
+ * reuses them instead of allocating new ones. Pool is bounded, nodes above the limit are left to GC.
+ * <p>
+ * Pool is not thread safe, use one pool per thread.
+ *
+ * <pre>
+ * XmlNodePool pool = new XmlNodePool();
+ * XmlParseOptions options = new XmlParseOptions();
+ * options.setNodePool(pool);
+ * XmlNode message = new XmlNode();
+ * while (...) {
+ *     message.parseOrThrow(reader, options);
+ *     handle(message);
+ *     message.recycle(pool);
+ * }
+ * </pre>
+ */
+public class XmlNodePool {
+
+    static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final ArrayList<XmlNode> mNodes = new ArrayList<XmlNode>();
+    private final int mMaxSize;
+
+    public XmlNodePool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public XmlNodePool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Get released node or create new one if pool is empty.
+     */
+    public XmlNode obtain() {
+        int size = mNodes.size();
+        return size > 0 ? mNodes.remove(size - 1) : new XmlNode();
+    }
+
+    /**
+     * Put node and all its descendants into pool. None of them must be used after that.
+     */
+    public void release(XmlNode node) {
+        node.recycle(this);
+        add(node);
+    }
+
+    public int size() {
+        return mNodes.size();
+    }
+
+    /**
+     * Add node which is already cleared.
+     */
+    void add(XmlNode node) {
+        if (mNodes.size() < mMaxSize) {
+            mNodes.add(node);
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * Streaming reader which builds {@link XmlNode} only for elements at specified path, one at a time.
+ * Useful for huge documents made of many similar records, memory usage is bounded by the size of one record.
+ * Path is a list of element names from the document root, <code>*</code> matches any name.
+ *
+ * <pre>
+ * XmlNodeReader reader = new XmlNodeReader(inputStream, "/catalog/product");
+ * try {
+ *     XmlNode product;
+ *     while ((product = reader.next()) != null) {
+ *         ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ */
+public class XmlNodeReader implements Closeable {
+
+    private final XmlPullParser mParser;
+    private final Closeable mInput;
+
+    // element names of the path, leading and trailing slashes are ignored.
+    private final String[] mPath;
+
+    // names of currently open elements.
+    private final ArrayList<String> mOpenElements = new ArrayList<String>();
+
+    // names are shared between all records read.
+    private final XmlNamePool mNames = new XmlNamePool();
+
+    private XmlParseOptions mOptions = XmlParseOptions.DEFAULT;
+
+    public XmlNodeReader(InputStream inputStream, String path) throws XmlPullParserException {
+        this(inputStream, "utf-8", path);
+    }
+
+    public XmlNodeReader(InputStream inputStream, String encoding, String path) throws XmlPullParserException {
+        mParser = XmlNode.getBackend().newParser();
+        mParser.setInput(inputStream, encoding);
+        mInput = inputStream;
+        mPath = splitPath(path);
+    }
+
+    public XmlNodeReader(Reader reader, String path) throws XmlPullParserException {
+        mParser = XmlNode.getBackend().newParser();
+        mParser.setInput(reader);
+        mInput = reader;
+        mPath = splitPath(path);
+    }
+
+    /**
+     * Read next element matching the path.
+     *
+     * @return element with all its content, or <code>null</code> when the end of document is reached.
+     * If options have node pool, element can be released to it when it's handled.
+     */
+    public XmlNode next() throws XmlPullParserException, IOException {
+        XmlParseException failure;
+        try {
+            return readNext();
+        } catch (XmlParseException exc) {
+            failure = exc;
+        } catch (RuntimeException exc) {
+            failure = XmlNode.parseFailure(mParser, exc, "");
+        }
+        if (failure.getCause() instanceof IOException) {
+            throw (IOException) failure.getCause();
+        }
+        // failure tells path of the element being read.
+        throw new XmlPullParserException(null, mParser, failure);
+    }
+
+    private XmlNode readNext() throws XmlPullParserException, IOException, XmlParseException {
+        int eventType = mParser.next();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
+                mOpenElements.add(mParser.getName());
+                if (isPathMatched()) {
+                    XmlNodePool nodePool = mOptions.getNodePool();
+                    XmlNode node = nodePool != null ? nodePool.obtain() : new XmlNode();
+                    node.readElement(mParser, mNames, mOptions);
+                    mOpenElements.remove(mOpenElements.size() - 1);
+                    return node;
+                }
+            } else if (eventType == XmlPullParser.END_TAG && !mOpenElements.isEmpty()) {
+                mOpenElements.remove(mOpenElements.size() - 1);
+            }
+            eventType = mParser.next();
+        }
+        return null;
+    }
+
+    /**
+     * Set options used to build records read after this call.
+     */
+    public void setOptions(XmlParseOptions options) {
+        mOptions = options;
+    }
+
+    /**
+     * Close underlying input.
+     */
+    @Override
+    public void close() throws IOException {
+        mInput.close();
+    }
+
+    private boolean isPathMatched() {
+        if (mOpenElements.size() != mPath.length) {
+            return false;
+        }
+        for (int i = mPath.length - 1; i >= 0; i--) {
+            if (!mPath[i].equals("*") && !mPath[i].equals(mOpenElements.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] splitPath(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        if (start == end) {
+            throw new IllegalArgumentException("Empty path");
+        }
+        return path.substring(start, end).split("/");
+    }
+
+}
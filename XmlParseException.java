@@ -0,0 +1,47 @@
+/**
+ * Xml parse failure with position in input and path of the element being parsed when it happened.
+ */
+public class XmlParseException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mLineNumber;
+    private final int mColumnNumber;
+    private final String mElementPath;
+
+    public XmlParseException(String message, int lineNumber, int columnNumber, String elementPath, Throwable cause) {
+        super(message, cause);
+        mLineNumber = lineNumber;
+        mColumnNumber = columnNumber;
+        mElementPath = elementPath;
+    }
+
+    /**
+     * @return line of the failure, <code>-1</code> if unknown.
+     */
+    public int getLineNumber() {
+        return mLineNumber;
+    }
+
+    /**
+     * @return column of the failure, <code>-1</code> if unknown.
+     */
+    public int getColumnNumber() {
+        return mColumnNumber;
+    }
+
+    /**
+     * @return path of open elements at the failure, e.g. <code>/catalog/product/name</code>,
+     * empty string if failure happened outside of document element.
+     */
+    public String getElementPath() {
+        return mElementPath;
+    }
+
+    @Override
+    public String getMessage() {
+        return super.getMessage() + " (line " + mLineNumber + ", column " + mColumnNumber
+                + (mElementPath.length() > 0 ? ", element " + mElementPath : "") + ")";
+    }
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Options of {@link XmlNode} parsing. Default options keep all text as is.
+ */
+public class XmlParseOptions {
+
+    // shared instance for parse calls without options, must not be modified.
+    static final XmlParseOptions DEFAULT = new XmlParseOptions();
+
+    private boolean mIgnoreWhitespace = false;
+    private boolean mLazyText = false;
+    private XmlNodePool mNodePool = null;
+
+    /**
+     * Skip text which consists of whitespace only, e.g. indentation between child elements of pretty printed xml.
+     * Skipped text is not even converted to <code>String</code>.
+     */
+    public void setIgnoreWhitespace(boolean ignoreWhitespace) {
+        mIgnoreWhitespace = ignoreWhitespace;
+    }
+
+    public boolean isIgnoreWhitespace() {
+        return mIgnoreWhitespace;
+    }
+
+    /**
+     * Keep text of all nodes in one buffer per document and create value strings only when
+     * {@link XmlNode#getValue()} is called. Buffer stays in memory while any node of the document is alive.
+     */
+    public void setLazyText(boolean lazyText) {
+        mLazyText = lazyText;
+    }
+
+    public boolean isLazyText() {
+        return mLazyText;
+    }
+
+    /**
+     * Take nodes from pool instead of creating them, see {@link XmlNode#recycle(XmlNodePool)}.
+     *
+     * @param nodePool pool or <code>null</code> to create new nodes.
+     */
+    public void setNodePool(XmlNodePool nodePool) {
+        mNodePool = nodePool;
+    }
+
+    public XmlNodePool getNodePool() {
+        return mNodePool;
+    }
+
+}
@@ -0,0 +1,404 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiled path query over {@link XmlNode} tree, a small subset of XPath. Expression is parsed once by
+ * {@link #compile(String)} and can be evaluated against any number of trees.
+ * <p>
+ * Supported syntax:
+ * <pre>
+ * a/b/c             children by name, relative to node query is evaluated against
+ * /a/b              absolute path, <code>a</code> is document root
+ * a//c, //c         descendants at any depth
+ * *                 any element
+ * b[2]              position among nodes selected by the step from one parent, starting at 1
+ * b[@id]            nodes with attribute
+ * b[@id='3']        nodes with attribute value, value may be quoted with ' or "
+ * </pre>
+ * Predicates are applied in the order they are written, e.g. <code>b[@type='x'][1]</code> is the first
+ * <code>b</code> with type <code>x</code>. Position of descendant step counts all descendants of the context node.
+ */
+public class XmlPath {
+
+    private final String mExpression;
+    private final boolean mAbsolute;
+    private final Step[] mSteps;
+    // descendant step before the last one gives nested contexts, nodes selected from them may come out of
+    // document order or be selected twice.
+    private final boolean mNested;
+
+    private static final Comparator<XmlNode> INDEX_ORDER = new Comparator<XmlNode>() {
+        @Override
+        public int compare(XmlNode first, XmlNode second) {
+            return first.mIndexPosition < second.mIndexPosition ? -1
+                    : first.mIndexPosition == second.mIndexPosition ? 0 : 1;
+        }
+    };
+
+    private XmlPath(String expression, boolean absolute, Step[] steps) {
+        mExpression = expression;
+        mAbsolute = absolute;
+        mSteps = steps;
+        boolean nested = false;
+        for (int i = 0; i < steps.length - 1; i++) {
+            nested |= steps[i].mDescendant;
+        }
+        mNested = nested;
+    }
+
+    /**
+     * Parse path expression.
+     *
+     * @throws IllegalArgumentException if expression is malformed.
+     */
+    public static XmlPath compile(String expression) {
+        return new Parser(expression).parse();
+    }
+
+    /**
+     * Find first node matching the path in document order.
+     *
+     * @return found node or {@link XmlNode#NULL_NODE}.
+     */
+    public XmlNode selectFirst(XmlNode node) {
+        if (mNested) {
+            List<XmlNode> nodes = selectAll(node);
+            return nodes.isEmpty() ? XmlNode.NULL_NODE : nodes.get(0);
+        }
+        if (!mAbsolute) {
+            return selectFirst(node, 0);
+        }
+        XmlNode root = root(node);
+        for (XmlNode candidate : selectRoot(root)) {
+            XmlNode result = selectFirst(candidate, 1);
+            if (result != XmlNode.NULL_NODE) {
+                return result;
+            }
+        }
+        return XmlNode.NULL_NODE;
+    }
+
+    /**
+     * Find all nodes matching the path. Each node is returned once, in document order.
+     *
+     * @return found nodes, empty list if nothing is found.
+     */
+    public List<XmlNode> selectAll(XmlNode node) {
+        ArrayList<XmlNode> result = new ArrayList<XmlNode>();
+        if (!mAbsolute) {
+            selectAll(node, 0, result);
+        } else {
+            for (XmlNode candidate : selectRoot(root(node))) {
+                selectAll(candidate, 1, result);
+            }
+        }
+        if (mNested && result.size() > 1) {
+            return documentOrder(mAbsolute ? root(node) : node, result);
+        }
+        return result;
+    }
+
+    /**
+     * Get value of the first matching node.
+     *
+     * @return node value, empty string if nothing is found.
+     */
+    public String selectValue(XmlNode node) {
+        return selectFirst(node).getValue();
+    }
+
+    @Override
+    public String toString() {
+        return mExpression;
+    }
+
+    private XmlNode selectFirst(XmlNode node, int stepIndex) {
+        if (stepIndex == mSteps.length) {
+            return node;
+        }
+        for (XmlNode candidate : mSteps[stepIndex].select(node)) {
+            XmlNode result = selectFirst(candidate, stepIndex + 1);
+            if (result != XmlNode.NULL_NODE) {
+                return result;
+            }
+        }
+        return XmlNode.NULL_NODE;
+    }
+
+    private void selectAll(XmlNode node, int stepIndex, ArrayList<XmlNode> result) {
+        if (stepIndex == mSteps.length) {
+            result.add(node);
+            return;
+        }
+        for (XmlNode candidate : mSteps[stepIndex].select(node)) {
+            selectAll(candidate, stepIndex + 1, result);
+        }
+    }
+
+    /**
+     * Apply first step of absolute path to document root.
+     */
+    private List<XmlNode> selectRoot(XmlNode root) {
+        Step step = mSteps[0];
+        List<XmlNode> candidates;
+        if (step.mDescendant) {
+            List<XmlNode> descendants = step.mName != null ? root.findNodes(step.mName) : allDescendants(root);
+            ArrayList<XmlNode> nodes = new ArrayList<XmlNode>(descendants.size() + 1);
+            if (step.matchesName(root)) {
+                nodes.add(root);
+            }
+            nodes.addAll(descendants);
+            candidates = nodes;
+        } else {
+            candidates = step.matchesName(root) ? Collections.singletonList(root) : Collections.<XmlNode>emptyList();
+        }
+        return step.filter(candidates);
+    }
+
+    /**
+     * Remove repeated nodes and sort the rest in document order.
+     *
+     * @param scope node all the nodes are in subtree of.
+     */
+    private static List<XmlNode> documentOrder(XmlNode scope, List<XmlNode> nodes) {
+        Set<XmlNode> unique = Collections.newSetFromMap(new IdentityHashMap<XmlNode, Boolean>());
+        unique.addAll(nodes);
+        ArrayList<XmlNode> result = new ArrayList<XmlNode>(unique.size());
+        if (scope.isIndexed()) {
+            // positions of index are valid for the whole tree.
+            result.addAll(unique);
+            Collections.sort(result, INDEX_ORDER);
+            return result;
+        }
+        ArrayList<XmlNode> stack = new ArrayList<XmlNode>();
+        stack.add(scope);
+        while (!stack.isEmpty() && result.size() < unique.size()) {
+            XmlNode current = stack.remove(stack.size() - 1);
+            if (unique.contains(current)) {
+                result.add(current);
+            }
+            for (int i = current.getChildrenCount() - 1; i >= 0; i--) {
+                stack.add(current.getChild(i));
+            }
+        }
+        return result;
+    }
+
+    private static XmlNode root(XmlNode node) {
+        while (node.getParent() != null) {
+            node = node.getParent();
+        }
+        return node;
+    }
+
+    private static List<XmlNode> allDescendants(XmlNode node) {
+        ArrayList<XmlNode> result = new ArrayList<XmlNode>();
+        ArrayList<XmlNode> stack = new ArrayList<XmlNode>();
+        for (int i = node.getChildrenCount() - 1; i >= 0; i--) {
+            stack.add(node.getChild(i));
+        }
+        while (!stack.isEmpty()) {
+            XmlNode current = stack.remove(stack.size() - 1);
+            result.add(current);
+            for (int i = current.getChildrenCount() - 1; i >= 0; i--) {
+                stack.add(current.getChild(i));
+            }
+        }
+        return result;
+    }
+
+    private static class Step {
+
+        // element name, null for any element.
+        private final String mName;
+        private final boolean mDescendant;
+        private final Predicate[] mPredicates;
+
+        Step(String name, boolean descendant, Predicate[] predicates) {
+            mName = name;
+            mDescendant = descendant;
+            mPredicates = predicates;
+        }
+
+        boolean matchesName(XmlNode node) {
+            return mName == null || mName.equals(node.getName());
+        }
+
+        List<XmlNode> select(XmlNode node) {
+            List<XmlNode> candidates;
+            if (mDescendant) {
+                candidates = mName != null ? node.findNodes(mName) : allDescendants(node);
+            } else if (mName != null) {
+                candidates = node.getChildren(mName);
+            } else {
+                ArrayList<XmlNode> children = new ArrayList<XmlNode>(node.getChildrenCount());
+                for (int i = 0; i < node.getChildrenCount(); i++) {
+                    children.add(node.getChild(i));
+                }
+                candidates = children;
+            }
+            return filter(candidates);
+        }
+
+        List<XmlNode> filter(List<XmlNode> candidates) {
+            for (Predicate predicate : mPredicates) {
+                if (candidates.isEmpty()) {
+                    break;
+                }
+                candidates = predicate.filter(candidates);
+            }
+            return candidates;
+        }
+    }
+
+    private static class Predicate {
+
+        // 1-based position, 0 for attribute predicate.
+        private final int mPosition;
+        private final String mAttribute;
+        // expected attribute value, null if only presence is checked.
+        private final String mValue;
+
+        Predicate(int position, String attribute, String value) {
+            mPosition = position;
+            mAttribute = attribute;
+            mValue = value;
+        }
+
+        List<XmlNode> filter(List<XmlNode> candidates) {
+            if (mPosition > 0) {
+                return mPosition <= candidates.size()
+                        ? Collections.singletonList(candidates.get(mPosition - 1))
+                        : Collections.<XmlNode>emptyList();
+            }
+            ArrayList<XmlNode> result = new ArrayList<XmlNode>();
+            for (XmlNode candidate : candidates) {
+                String value = candidate.getAttribute(mAttribute);
+                if (value != null && (mValue == null || mValue.equals(value))) {
+                    result.add(candidate);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class Parser {
+
+        private final String mExpression;
+        private int mPosition = 0;
+
+        Parser(String expression) {
+            mExpression = expression;
+        }
+
+        XmlPath parse() {
+            if (mExpression.length() == 0) {
+                throw error("Empty path");
+            }
+            boolean absolute = mExpression.charAt(0) == '/';
+            ArrayList<Step> steps = new ArrayList<Step>();
+            boolean descendant = false;
+            if (absolute) {
+                mPosition++;
+                descendant = consume('/');
+            }
+            while (true) {
+                steps.add(parseStep(descendant));
+                if (mPosition == mExpression.length()) {
+                    break;
+                }
+                expect('/');
+                descendant = consume('/');
+            }
+            return new XmlPath(mExpression, absolute, steps.toArray(new Step[steps.size()]));
+        }
+
+        private Step parseStep(boolean descendant) {
+            String name = consume('*') ? null : parseName();
+            ArrayList<Predicate> predicates = new ArrayList<Predicate>();
+            while (consume('[')) {
+                predicates.add(parsePredicate());
+                expect(']');
+            }
+            return new Step(name, descendant, predicates.toArray(new Predicate[predicates.size()]));
+        }
+
+        private Predicate parsePredicate() {
+            if (consume('@')) {
+                String attribute = parseName();
+                String value = null;
+                if (consume('=')) {
+                    value = parseQuoted();
+                }
+                return new Predicate(0, attribute, value);
+            }
+            int start = mPosition;
+            while (mPosition < mExpression.length() && Character.isDigit(mExpression.charAt(mPosition))) {
+                mPosition++;
+            }
+            if (start == mPosition) {
+                throw error("Expected position or attribute");
+            }
+            int position = XmlValues.parseInt(mExpression.substring(start, mPosition), 0);
+            if (position < 1) {
+                throw error("Position must be positive");
+            }
+            return new Predicate(position, null, null);
+        }
+
+        private String parseName() {
+            int start = mPosition;
+            while (mPosition < mExpression.length() && isNameChar(mExpression.charAt(mPosition))) {
+                mPosition++;
+            }
+            if (start == mPosition) {
+                throw error("Expected name");
+            }
+            return mExpression.substring(start, mPosition);
+        }
+
+        private String parseQuoted() {
+            if (mPosition == mExpression.length()) {
+                throw error("Expected quoted value");
+            }
+            char quote = mExpression.charAt(mPosition);
+            if (quote != '\'' && quote != '"') {
+                throw error("Expected quoted value");
+            }
+            int end = mExpression.indexOf(quote, mPosition + 1);
+            if (end < 0) {
+                throw error("Unterminated value");
+            }
+            String value = mExpression.substring(mPosition + 1, end);
+            mPosition = end + 1;
+            return value;
+        }
+
+        private boolean consume(char c) {
+            if (mPosition < mExpression.length() && mExpression.charAt(mPosition) == c) {
+                mPosition++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + mPosition + " in path \"" + mExpression + "\"");
+        }
+
+        private static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == ':';
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.XmlSerializer;
+
+/**
+ * Backend based on <code>XmlPullParserFactory</code>. On Android it uses platform parser and serializer,
+ * on JVM any XmlPull implementation found on classpath (e.g. kXML).
+ */
+public class XmlPullBackend implements XmlBackend {
+
+    private XmlPullParserFactory mFactory;
+
+    /**
+     * Create backend with factory looked up by <code>XmlPullParserFactory.newInstance()</code> on first use.
+     */
+    public XmlPullBackend() {
+    }
+
+    /**
+     * Create backend with specified factory, factory is switched to namespace aware mode.
+     */
+    public XmlPullBackend(XmlPullParserFactory factory) {
+        factory.setNamespaceAware(true);
+        mFactory = factory;
+    }
+
+    @Override
+    public XmlPullParser newParser() throws XmlPullParserException {
+        return getFactory().newPullParser();
+    }
+
+    @Override
+    public XmlSerializer newSerializer() throws XmlPullParserException {
+        return getFactory().newSerializer();
+    }
+
+    private synchronized XmlPullParserFactory getFactory() throws XmlPullParserException {
+        if (mFactory == null) {
+            XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            mFactory = factory;
+        }
+        return mFactory;
+    }
+
+}
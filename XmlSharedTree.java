@@ -0,0 +1,154 @@
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Xml tree shared between threads, e.g. configuration which is reloaded while it's read.
+ * Readers take current version with {@link #get()}, it's a frozen tree (see {@link XmlNode#freeze()})
+ * which never changes. Each modification copies nodes on the path from root to modified node, other subtrees
+ * are shared with previous version, and new root is published atomically. Readers don't lock and are not
+ * blocked by writers, concurrent writers retry on conflict.
+ *
+ * <pre>
+ * XmlSharedTree config = new XmlSharedTree(parsed);
+ * // reader thread
+ * int timeout = config.get().getChild("network").getChildIntValue("timeout", 30);
+ * // writer thread
+ * config.setValue(XmlPath.compile("network/timeout"), "60");
+ * </pre>
+ * Since subtrees are shared between versions, nodes of the tree don't link to their parents,
+ * {@link XmlNode#getParent()} returns <code>null</code> for them. Navigate from root of a version instead.
+ */
+public class XmlSharedTree {
+
+    private final AtomicReference<XmlNode> mRoot;
+
+    /**
+     * @param root initial content, it's copied and may be modified by caller afterwards.
+     */
+    public XmlSharedTree(XmlNode root) {
+        mRoot = new AtomicReference<XmlNode>(root.freezeDetached());
+    }
+
+    /**
+     * Get current version. Returned tree stays unchanged by subsequent modifications.
+     */
+    public XmlNode get() {
+        return mRoot.get();
+    }
+
+    /**
+     * Replace whole tree, e.g. after configuration file is reloaded.
+     *
+     * @param root new content, it's copied and may be modified by caller afterwards.
+     */
+    public void set(XmlNode root) {
+        mRoot.set(root.freezeDetached());
+    }
+
+    /**
+     * Append child to the first node matching the path.
+     *
+     * @param child node to add, it's copied and may be modified by caller afterwards.
+     * @return <code>false</code> if no node matches the path.
+     */
+    public boolean addChild(XmlPath parentPath, XmlNode child) {
+        final XmlNode frozenChild = child.freezeDetached();
+        return update(parentPath, new Update() {
+            @Override
+            public XmlNode apply(XmlNode node) {
+                return node.withChild(node.getChildrenCount(), frozenChild);
+            }
+        });
+    }
+
+    /**
+     * Set attribute of the first node matching the path.
+     *
+     * @return <code>false</code> if no node matches the path.
+     */
+    public boolean setAttribute(XmlPath path, final String attrName, final String attrValue) {
+        return update(path, new Update() {
+            @Override
+            public XmlNode apply(XmlNode node) {
+                return node.withAttribute(attrName, attrValue);
+            }
+        });
+    }
+
+    /**
+     * Set value of the first node matching the path.
+     *
+     * @return <code>false</code> if no node matches the path.
+     */
+    public boolean setValue(XmlPath path, final String value) {
+        return update(path, new Update() {
+            @Override
+            public XmlNode apply(XmlNode node) {
+                return node.withValue(value);
+            }
+        });
+    }
+
+    private boolean update(XmlPath path, Update update) {
+        while (true) {
+            XmlNode root = mRoot.get();
+            XmlNode target = path.selectFirst(root);
+            if (target == XmlNode.NULL_NODE) {
+                return false;
+            }
+            ArrayList<XmlNode> ancestors = new ArrayList<XmlNode>();
+            ArrayList<Integer> positions = new ArrayList<Integer>();
+            if (!findPath(root, target, ancestors, positions)) {
+                // path matched node outside of the tree, e.g. absolute path evaluated from detached node.
+                return false;
+            }
+
+            // copy from target up to root.
+            XmlNode copy = update.apply(target);
+            for (int i = ancestors.size() - 1; i >= 0; i--) {
+                copy = ancestors.get(i).withChild(positions.get(i), copy);
+            }
+            if (mRoot.compareAndSet(root, copy)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Find ancestors of target and position of each next node on the path within its parent.
+     */
+    private static boolean findPath(XmlNode root, XmlNode target, ArrayList<XmlNode> ancestors,
+                                    ArrayList<Integer> positions) {
+        if (root == target) {
+            return true;
+        }
+        // depth first walk, lists hold current path.
+        ancestors.add(root);
+        positions.add(-1);
+        while (!ancestors.isEmpty()) {
+            int depth = ancestors.size() - 1;
+            XmlNode node = ancestors.get(depth);
+            int position = positions.get(depth) + 1;
+            if (position == node.getChildrenCount()) {
+                ancestors.remove(depth);
+                positions.remove(depth);
+                continue;
+            }
+            positions.set(depth, position);
+            XmlNode child = node.getChild(position);
+            if (child == target) {
+                return true;
+            }
+            if (child.hasChild()) {
+                ancestors.add(child);
+                positions.add(-1);
+            }
+        }
+        return false;
+    }
+
+    private interface Update {
+        XmlNode apply(XmlNode node);
+    }
+
+}
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Growing char buffer which keeps text of parsed document. Node values refer to it with {@link Slice}
+ * instead of holding own <code>String</code>, string is created only when value is requested.
+ * Buffer stays in memory while any slice of it is alive.
+ */
+class XmlTextBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private char[] mChars = new char[INITIAL_CAPACITY];
+    private int mLength = 0;
+
+    /**
+     * Append text to current value of node without copying the value.
+     *
+     * @param current current node value.
+     * @return new node value, <code>null</code> if current value is not empty and not at the end of buffer.
+     */
+    Slice append(CharSequence current, char[] chars, int start, int length) {
+        if (current instanceof Slice) {
+            Slice slice = (Slice) current;
+            if (slice.mBuffer == this && slice.mOffset + slice.mLength == mLength) {
+                // previous part of text is the last one in buffer, extend it.
+                add(chars, start, length);
+                return new Slice(this, slice.mOffset, slice.mLength + length);
+            }
+        }
+        if (current == null || current.length() == 0) {
+            int offset = mLength;
+            add(chars, start, length);
+            return new Slice(this, offset, length);
+        }
+        return null;
+    }
+
+    /**
+     * Copy text collected elsewhere to the end of buffer.
+     */
+    Slice add(StringBuilder text) {
+        int offset = mLength;
+        int length = text.length();
+        ensureCapacity(length);
+        text.getChars(0, length, mChars, offset);
+        mLength += length;
+        return new Slice(this, offset, length);
+    }
+
+    private void add(char[] chars, int start, int length) {
+        ensureCapacity(length);
+        System.arraycopy(chars, start, mChars, mLength, length);
+        mLength += length;
+    }
+
+    private void ensureCapacity(int length) {
+        if (mLength + length > mChars.length) {
+            char[] grown = new char[Math.max(mChars.length * 2, mLength + length)];
+            System.arraycopy(mChars, 0, grown, 0, mLength);
+            mChars = grown;
+        }
+    }
+
+    /**
+     * Read-only view of buffer part.
+     */
+    static class Slice implements CharSequence {
+
+        private final XmlTextBuffer mBuffer;
+        private final int mOffset;
+        private final int mLength;
+
+        Slice(XmlTextBuffer buffer, int offset, int length) {
+            mBuffer = buffer;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        @Override
+        public int length() {
+            return mLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= mLength) {
+                throw new IndexOutOfBoundsException("Index " + index + ", length " + mLength);
+            }
+            return mBuffer.mChars[mOffset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > mLength || start > end) {
+                throw new IndexOutOfBoundsException("Range " + start + ".." + end + ", length " + mLength);
+            }
+            return new Slice(mBuffer, mOffset + start, end - start);
+        }
+
+        /**
+         * Write part of slice without creating intermediate string.
+         */
+        void write(Writer out, int start, int length) throws IOException {
+            out.write(mBuffer.mChars, mOffset + start, length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(mBuffer.mChars, mOffset, mLength);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Number and enum parsing for {@link XmlNode} values. Unlike <code>Integer.parseInt</code> and friends these methods
+ * don't throw on missing or malformed input, they return supplied default value instead.
+ */
+class XmlValues {
+
+    // getEnumConstants() clones the array on every call.
+    private static final ConcurrentHashMap<Class<?>, Enum<?>[]> sEnumConstants =
+            new ConcurrentHashMap<Class<?>, Enum<?>[]>();
+
+    private XmlValues() {
+    }
+
+    public static int parseInt(CharSequence value, int defaultValue) {
+        // Long.MIN_VALUE marks malformed input, it's out of int range as well.
+        long result = parseLong(value, Long.MIN_VALUE);
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            return defaultValue;
+        }
+        return (int) result;
+    }
+
+    public static long parseLong(CharSequence value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        int length = value.length();
+        if (length == 0) {
+            return defaultValue;
+        }
+
+        int position = 0;
+        boolean negative = false;
+        char first = value.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            position++;
+            if (length == 1) {
+                return defaultValue;
+            }
+        }
+
+        // accumulate negative value, it has larger range.
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; position < length; position++) {
+            int digit = value.charAt(position) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit) {
+                return defaultValue;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return defaultValue;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    public static double parseDouble(CharSequence value, double defaultValue) {
+        return isDecimal(value) ? Double.parseDouble(value.toString()) : defaultValue;
+    }
+
+    public static float parseFloat(CharSequence value, float defaultValue) {
+        return isDecimal(value) ? Float.parseFloat(value.toString()) : defaultValue;
+    }
+
+    /**
+     * Same as <code>Boolean.parseBoolean</code>: <code>true</code> ignoring case, anything else is false.
+     */
+    public static boolean parseBoolean(CharSequence value) {
+        if (value == null || value.length() != 4) {
+            return false;
+        }
+        return Character.toLowerCase(value.charAt(0)) == 't' && Character.toLowerCase(value.charAt(1)) == 'r'
+                && Character.toLowerCase(value.charAt(2)) == 'u' && Character.toLowerCase(value.charAt(3)) == 'e';
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E extends Enum<E>> E parseEnum(CharSequence value, Class<E> enumClass, E defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        Enum<?>[] constants = sEnumConstants.get(enumClass);
+        if (constants == null) {
+            constants = enumClass.getEnumConstants();
+            sEnumConstants.put(enumClass, constants);
+        }
+        for (Enum<?> constant : constants) {
+            if (constant.name().contentEquals(value)) {
+                return (E) constant;
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Check that value is a decimal number which <code>Double.parseDouble</code> accepts without exception:
+     * optional sign, digits with optional fraction and optional exponent, or NaN/Infinity.
+     */
+    private static boolean isDecimal(CharSequence value) {
+        if (value == null) {
+            return false;
+        }
+        int length = value.length();
+        int position = 0;
+        if (position < length && (value.charAt(position) == '-' || value.charAt(position) == '+')) {
+            position++;
+        }
+        if (startsWith(value, "NaN", position) || startsWith(value, "Infinity", position)) {
+            return length - position == (value.charAt(position) == 'N' ? 3 : 8);
+        }
+
+        int digits = 0;
+        while (position < length && isDigit(value.charAt(position))) {
+            position++;
+            digits++;
+        }
+        if (position < length && value.charAt(position) == '.') {
+            position++;
+            while (position < length && isDigit(value.charAt(position))) {
+                position++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (position < length && (value.charAt(position) == 'e' || value.charAt(position) == 'E')) {
+            position++;
+            if (position < length && (value.charAt(position) == '-' || value.charAt(position) == '+')) {
+                position++;
+            }
+            int exponentDigits = 0;
+            while (position < length && isDigit(value.charAt(position))) {
+                position++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        return position == length;
+    }
+
+    private static boolean startsWith(CharSequence value, String prefix, int position) {
+        if (value.length() - position < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (value.charAt(position + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+}
@@ -0,0 +1,217 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+
+/**
+ * Throughput and allocation benchmark for {@link XmlNode} hot paths on synthetic documents.
+ * Run with <code>mvn -Pbenchmarks compile exec:java</code>.
+ * <p>
+ * Each operation is warmed up and then measured for a fixed time on the current thread. Allocation is taken from
+ * per thread allocation counter of HotSpot, so it's reported only on JVMs which support it.
+ */
+public class XmlNodeBenchmark {
+
+    private static final long WARMUP_NANOS = 1000000000L;
+    private static final long MEASURE_NANOS = 2000000000L;
+
+    // results are accumulated here so JIT can't drop benchmarked calls.
+    private static volatile long sSink;
+
+    private interface Operation {
+        long run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(String.format("%-28s %14s %16s", "benchmark", "ops/s", "bytes/op"));
+
+        benchmarkDocument("small", smallDocument());
+        benchmarkDocument("medium", mediumDocument());
+        benchmarkDocument("deep", deepDocument(2000));
+        benchmarkDocument("wide", wideDocument(10000));
+    }
+
+    private static void benchmarkDocument(String name, String xml) throws Exception {
+        final byte[] data = xml.getBytes(Charset.forName("UTF-8"));
+        final XmlNode root = new XmlNode();
+        if (!root.parse(data)) {
+            throw new IllegalStateException("Can't parse " + name + " document");
+        }
+        final String childName = root.hasChild() ? root.getChild(0).getName() : "";
+        final String leafName = "leaf";
+
+        run(name + ".parse", new Operation() {
+            @Override
+            public long run() {
+                XmlNode node = new XmlNode();
+                return node.parse(data) ? node.getChildrenCount() : -1;
+            }
+        });
+        final XmlNodePool pool = new XmlNodePool();
+        final XmlParseOptions pooledOptions = new XmlParseOptions();
+        pooledOptions.setNodePool(pool);
+        final XmlNode pooledRoot = new XmlNode();
+        run(name + ".parse.pooled", new Operation() {
+            @Override
+            public long run() throws Exception {
+                pooledRoot.parseOrThrow(new ByteArrayInputStream(data), "utf-8", pooledOptions);
+                long count = pooledRoot.getChildrenCount();
+                pooledRoot.recycle(pool);
+                return count;
+            }
+        });
+        run(name + ".getChild", new Operation() {
+            @Override
+            public long run() {
+                return root.getChild(childName).getChildrenCount();
+            }
+        });
+        run(name + ".getChild.miss", new Operation() {
+            @Override
+            public long run() {
+                return root.getChild("missing").isNullNode() ? 1 : 0;
+            }
+        });
+        run(name + ".findNode", new Operation() {
+            @Override
+            public long run() {
+                return root.findNode(leafName).getName().length();
+            }
+        });
+        run(name + ".document.parse", new Operation() {
+            @Override
+            public long run() throws Exception {
+                return XmlDocument.parse(new ByteArrayInputStream(data), "utf-8").getNodeCount();
+            }
+        });
+        final XmlDocument document = XmlDocument.parse(new ByteArrayInputStream(data), "utf-8");
+        run(name + ".document.findNode", new Operation() {
+            @Override
+            public long run() {
+                return document.findNode(document.getRoot(), leafName);
+            }
+        });
+        run(name + ".toString", new Operation() {
+            @Override
+            public long run() {
+                return root.toString().length();
+            }
+        });
+        run(name + ".writeTo", new Operation() {
+            @Override
+            public long run() throws IOException {
+                CountingWriter writer = new CountingWriter();
+                root.writeTo(writer);
+                return writer.mCount;
+            }
+        });
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        root.writeBinary(binary);
+        final byte[] binaryData = binary.toByteArray();
+        run(name + ".readBinary", new Operation() {
+            @Override
+            public long run() throws IOException {
+                return XmlNode.readBinary(new ByteArrayInputStream(binaryData)).getChildrenCount();
+            }
+        });
+    }
+
+    private static void run(String name, Operation operation) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long threadId = Thread.currentThread().getId();
+
+        measure(operation, WARMUP_NANOS);
+
+        long allocatedBefore = allocations != null ? allocations.getThreadAllocatedBytes(threadId) : 0;
+        long start = System.nanoTime();
+        long count = measure(operation, MEASURE_NANOS);
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = allocations != null ? allocations.getThreadAllocatedBytes(threadId) : 0;
+
+        double opsPerSecond = count * 1e9 / elapsed;
+        String bytesPerOp = allocations != null
+                ? String.format("%.1f", (allocatedAfter - allocatedBefore) / (double) count) : "n/a";
+        System.out.println(String.format("%-28s %14.1f %16s", name, opsPerSecond, bytesPerOp));
+    }
+
+    private static long measure(Operation operation, long duration) throws Exception {
+        long deadline = System.nanoTime() + duration;
+        long count = 0;
+        long sink = 0;
+        do {
+            // check time once per batch, nanoTime itself is not free.
+            for (int i = 0; i < 16; i++) {
+                sink += operation.run();
+            }
+            count += 16;
+        } while (System.nanoTime() < deadline);
+        sSink += sink;
+        return count;
+    }
+
+    private static String smallDocument() {
+        StringBuilder builder = new StringBuilder("<message id=\"1\" type=\"update\">");
+        builder.append("<header><from>client</from><to>server</to></header>");
+        builder.append("<body><count>5</count><leaf>value</leaf></body>");
+        builder.append("</message>");
+        return builder.toString();
+    }
+
+    private static String mediumDocument() {
+        StringBuilder builder = new StringBuilder("<catalog>");
+        for (int i = 0; i < 200; i++) {
+            builder.append("<product id=\"").append(i).append("\" available=\"true\">");
+            builder.append("<name>Product ").append(i).append("</name>");
+            builder.append("<price>").append(i * 10).append(".99</price>");
+            builder.append("<tags><tag>a</tag><tag>b</tag></tags>");
+            builder.append("</product>");
+        }
+        builder.append("<leaf>last</leaf></catalog>");
+        return builder.toString();
+    }
+
+    private static String deepDocument(int depth) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append("<level depth=\"").append(i).append("\">");
+        }
+        builder.append("<leaf>bottom</leaf>");
+        for (int i = 0; i < depth; i++) {
+            builder.append("</level>");
+        }
+        return builder.toString();
+    }
+
+    private static String wideDocument(int width) {
+        StringBuilder builder = new StringBuilder("<rows>");
+        for (int i = 0; i < width; i++) {
+            builder.append("<row>").append(i).append("</row>");
+        }
+        builder.append("<leaf>end</leaf></rows>");
+        return builder.toString();
+    }
+
+    private static class CountingWriter extends Writer {
+
+        long mCount;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            mCount += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
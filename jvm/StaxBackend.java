@@ -0,0 +1,653 @@
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Backend based on StAX (<code>javax.xml.stream</code>) for server JVMs, where XmlPull implementation may be absent.
+ * StAX reader and writer are adapted to XmlPull interfaces, so {@link XmlNode} code is the same for all backends.
+ * <p>
+ * JVM only: <code>javax.xml.stream</code> is not available on Android, so it lives in <code>jvm/</code>
+ * apart from the sources Android builds copy.
+ */
+public class StaxBackend implements XmlBackend {
+
+    private final XMLInputFactory mInputFactory;
+    private final XMLOutputFactory mOutputFactory;
+
+    public StaxBackend() {
+        this(XMLInputFactory.newInstance(), XMLOutputFactory.newInstance());
+    }
+
+    /**
+     * Create backend with specified factories. Input factory is configured to be namespace aware and coalescing,
+     * DTD processing is switched off. Factories must not be reconfigured after that.
+     */
+    public StaxBackend(XMLInputFactory inputFactory, XMLOutputFactory outputFactory) {
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        mInputFactory = inputFactory;
+        mOutputFactory = outputFactory;
+    }
+
+    @Override
+    public XmlPullParser newParser() {
+        return new StaxPullParser(mInputFactory);
+    }
+
+    @Override
+    public XmlSerializer newSerializer() {
+        return new StaxSerializer(mOutputFactory);
+    }
+
+    /**
+     * <code>XmlPullParser</code> over <code>XMLStreamReader</code>. Comments and processing instructions are skipped
+     * and text around them is merged, like XmlPull <code>next()</code> does. <code>nextToken()</code> behaves
+     * as <code>next()</code>.
+     */
+    private static class StaxPullParser implements XmlPullParser {
+
+        private final XMLInputFactory mFactory;
+
+        private XMLStreamReader mReader;
+        private int mEventType = START_DOCUMENT;
+        private int mDepth = 0;
+        private String mText;
+
+        // StAX event read ahead while merging text, -1 if none.
+        private int mPendingEvent = -1;
+
+        StaxPullParser(XMLInputFactory factory) {
+            mFactory = factory;
+        }
+
+        @Override
+        public void setFeature(String name, boolean state) throws XmlPullParserException {
+            if (FEATURE_PROCESS_NAMESPACES.equals(name) ? !state : state) {
+                throw new XmlPullParserException("Unsupported feature " + name);
+            }
+        }
+
+        @Override
+        public boolean getFeature(String name) {
+            return FEATURE_PROCESS_NAMESPACES.equals(name);
+        }
+
+        @Override
+        public void setProperty(String name, Object value) throws XmlPullParserException {
+            throw new XmlPullParserException("Unsupported property " + name);
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return null;
+        }
+
+        @Override
+        public void setInput(Reader in) throws XmlPullParserException {
+            reset();
+            if (in == null) {
+                return;
+            }
+            try {
+                mReader = mFactory.createXMLStreamReader(in);
+            } catch (XMLStreamException exc) {
+                throw new XmlPullParserException(exc.getMessage(), this, exc);
+            }
+        }
+
+        @Override
+        public void setInput(InputStream inputStream, String inputEncoding) throws XmlPullParserException {
+            reset();
+            try {
+                mReader = inputEncoding != null
+                        ? mFactory.createXMLStreamReader(inputStream, inputEncoding)
+                        : mFactory.createXMLStreamReader(inputStream);
+            } catch (XMLStreamException exc) {
+                throw new XmlPullParserException(exc.getMessage(), this, exc);
+            }
+        }
+
+        private void reset() {
+            if (mReader != null) {
+                try {
+                    mReader.close();
+                } catch (XMLStreamException exc) {
+                    // reader is dropped anyway.
+                }
+            }
+            mReader = null;
+            mEventType = START_DOCUMENT;
+            mDepth = 0;
+            mText = null;
+            mPendingEvent = -1;
+        }
+
+        @Override
+        public String getInputEncoding() {
+            return mReader != null ? mReader.getEncoding() : null;
+        }
+
+        @Override
+        public void defineEntityReplacementText(String entityName, String replacementText)
+                throws XmlPullParserException {
+            throw new XmlPullParserException("Entity replacement is not supported");
+        }
+
+        @Override
+        public int getNamespaceCount(int depth) throws XmlPullParserException {
+            throw new XmlPullParserException("Namespace declarations are not supported");
+        }
+
+        @Override
+        public String getNamespacePrefix(int pos) throws XmlPullParserException {
+            throw new XmlPullParserException("Namespace declarations are not supported");
+        }
+
+        @Override
+        public String getNamespaceUri(int pos) throws XmlPullParserException {
+            throw new XmlPullParserException("Namespace declarations are not supported");
+        }
+
+        @Override
+        public String getNamespace(String prefix) {
+            return mReader != null ? mReader.getNamespaceURI(prefix) : null;
+        }
+
+        @Override
+        public int getDepth() {
+            return mDepth;
+        }
+
+        @Override
+        public String getPositionDescription() {
+            return "line " + getLineNumber() + ", column " + getColumnNumber();
+        }
+
+        @Override
+        public int getLineNumber() {
+            return mReader != null ? mReader.getLocation().getLineNumber() : -1;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return mReader != null ? mReader.getLocation().getColumnNumber() : -1;
+        }
+
+        @Override
+        public boolean isWhitespace() throws XmlPullParserException {
+            if (mEventType != TEXT) {
+                throw new XmlPullParserException("Not a text event", this, null);
+            }
+            for (int i = 0; i < mText.length(); i++) {
+                if (!Character.isWhitespace(mText.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String getText() {
+            return mEventType == TEXT ? mText : null;
+        }
+
+        @Override
+        public char[] getTextCharacters(int[] holderForStartAndLength) {
+            if (mEventType != TEXT) {
+                holderForStartAndLength[0] = -1;
+                holderForStartAndLength[1] = -1;
+                return null;
+            }
+            holderForStartAndLength[0] = 0;
+            holderForStartAndLength[1] = mText.length();
+            return mText.toCharArray();
+        }
+
+        @Override
+        public String getNamespace() {
+            if (mEventType != START_TAG && mEventType != END_TAG) {
+                return null;
+            }
+            String namespace = mReader.getNamespaceURI();
+            return namespace != null ? namespace : NO_NAMESPACE;
+        }
+
+        @Override
+        public String getName() {
+            return mEventType == START_TAG || mEventType == END_TAG ? mReader.getLocalName() : null;
+        }
+
+        @Override
+        public String getPrefix() {
+            if (mEventType != START_TAG && mEventType != END_TAG) {
+                return null;
+            }
+            String prefix = mReader.getPrefix();
+            return prefix != null && prefix.length() > 0 ? prefix : null;
+        }
+
+        @Override
+        public boolean isEmptyElementTag() throws XmlPullParserException {
+            if (mEventType != START_TAG) {
+                throw new XmlPullParserException("Not a start tag", this, null);
+            }
+            // StAX doesn't report empty element tags.
+            return false;
+        }
+
+        @Override
+        public int getAttributeCount() {
+            return mEventType == START_TAG ? mReader.getAttributeCount() : -1;
+        }
+
+        @Override
+        public String getAttributeNamespace(int index) {
+            String namespace = mReader.getAttributeNamespace(index);
+            return namespace != null ? namespace : NO_NAMESPACE;
+        }
+
+        @Override
+        public String getAttributeName(int index) {
+            return mReader.getAttributeLocalName(index);
+        }
+
+        @Override
+        public String getAttributePrefix(int index) {
+            String prefix = mReader.getAttributePrefix(index);
+            return prefix != null && prefix.length() > 0 ? prefix : null;
+        }
+
+        @Override
+        public String getAttributeType(int index) {
+            return mReader.getAttributeType(index);
+        }
+
+        @Override
+        public boolean isAttributeDefault(int index) {
+            return !mReader.isAttributeSpecified(index);
+        }
+
+        @Override
+        public String getAttributeValue(int index) {
+            return mReader.getAttributeValue(index);
+        }
+
+        @Override
+        public String getAttributeValue(String namespace, String name) {
+            return mReader.getAttributeValue(namespace, name);
+        }
+
+        @Override
+        public int getEventType() {
+            return mEventType;
+        }
+
+        @Override
+        public int next() throws XmlPullParserException, IOException {
+            if (mReader == null) {
+                throw new XmlPullParserException("No input", this, null);
+            }
+            if (mEventType == END_TAG) {
+                mDepth--;
+            }
+            mText = null;
+            try {
+                StringBuilder text = null;
+                while (true) {
+                    int event = readEvent();
+                    switch (event) {
+                        case XMLStreamConstants.START_ELEMENT:
+                        case XMLStreamConstants.END_ELEMENT:
+                        case XMLStreamConstants.END_DOCUMENT:
+                            if (text != null) {
+                                // report text first, element is returned by next call.
+                                mPendingEvent = event;
+                                mText = text.toString();
+                                return mEventType = TEXT;
+                            }
+                            if (event == XMLStreamConstants.START_ELEMENT) {
+                                mDepth++;
+                                return mEventType = START_TAG;
+                            }
+                            return mEventType = event == XMLStreamConstants.END_ELEMENT ? END_TAG : END_DOCUMENT;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE:
+                            if (text == null) {
+                                text = new StringBuilder();
+                            }
+                            text.append(mReader.getTextCharacters(), mReader.getTextStart(), mReader.getTextLength());
+                            break;
+                        default:
+                            // comments, processing instructions and other markup are skipped.
+                            break;
+                    }
+                }
+            } catch (XMLStreamException exc) {
+                throw new XmlPullParserException(exc.getMessage(), this, exc);
+            }
+        }
+
+        private int readEvent() throws XMLStreamException {
+            if (mPendingEvent != -1) {
+                int event = mPendingEvent;
+                mPendingEvent = -1;
+                return event;
+            }
+            if (mEventType == END_DOCUMENT || !mReader.hasNext()) {
+                return XMLStreamConstants.END_DOCUMENT;
+            }
+            return mReader.next();
+        }
+
+        @Override
+        public int nextToken() throws XmlPullParserException, IOException {
+            return next();
+        }
+
+        @Override
+        public void require(int type, String namespace, String name) throws XmlPullParserException, IOException {
+            if (type != mEventType
+                    || (namespace != null && !namespace.equals(getNamespace()))
+                    || (name != null && !name.equals(getName()))) {
+                throw new XmlPullParserException("Expected " + TYPES[type] + " " + name + ", found "
+                        + TYPES[mEventType] + " " + getName(), this, null);
+            }
+        }
+
+        @Override
+        public String nextText() throws XmlPullParserException, IOException {
+            if (mEventType != START_TAG) {
+                throw new XmlPullParserException("Parser must be on start tag to read text", this, null);
+            }
+            int event = next();
+            if (event == TEXT) {
+                String text = mText;
+                event = next();
+                if (event != END_TAG) {
+                    throw new XmlPullParserException("Element text must be followed by end tag", this, null);
+                }
+                return text;
+            }
+            if (event == END_TAG) {
+                return "";
+            }
+            throw new XmlPullParserException("Parser must be on text or end tag", this, null);
+        }
+
+        @Override
+        public int nextTag() throws XmlPullParserException, IOException {
+            int event = next();
+            if (event == TEXT && isWhitespace()) {
+                event = next();
+            }
+            if (event != START_TAG && event != END_TAG) {
+                throw new XmlPullParserException("Expected start or end tag", this, null);
+            }
+            return event;
+        }
+    }
+
+    /**
+     * <code>XmlSerializer</code> over <code>XMLStreamWriter</code>.
+     */
+    private static class StaxSerializer implements XmlSerializer {
+
+        private final XMLOutputFactory mFactory;
+
+        private XMLStreamWriter mWriter;
+
+        // open elements, namespace and name for each of them.
+        private final ArrayList<String> mElements = new ArrayList<String>();
+
+        StaxSerializer(XMLOutputFactory factory) {
+            mFactory = factory;
+        }
+
+        @Override
+        public void setFeature(String name, boolean state) {
+            if (state) {
+                throw new IllegalStateException("Unsupported feature " + name);
+            }
+        }
+
+        @Override
+        public boolean getFeature(String name) {
+            return false;
+        }
+
+        @Override
+        public void setProperty(String name, Object value) {
+            throw new IllegalStateException("Unsupported property " + name);
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return null;
+        }
+
+        @Override
+        public void setOutput(OutputStream os, String encoding) throws IOException {
+            mElements.clear();
+            try {
+                mWriter = mFactory.createXMLStreamWriter(os, encoding != null ? encoding : "UTF-8");
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+        }
+
+        @Override
+        public void setOutput(Writer writer) throws IOException {
+            mElements.clear();
+            try {
+                mWriter = mFactory.createXMLStreamWriter(writer);
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+        }
+
+        @Override
+        public void startDocument(String encoding, Boolean standalone) throws IOException {
+            try {
+                if (encoding != null) {
+                    mWriter.writeStartDocument(encoding, "1.0");
+                } else {
+                    mWriter.writeStartDocument();
+                }
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+        }
+
+        @Override
+        public void endDocument() throws IOException {
+            try {
+                mWriter.writeEndDocument();
+                mWriter.flush();
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+            mElements.clear();
+        }
+
+        @Override
+        public void setPrefix(String prefix, String namespace) throws IOException {
+            try {
+                mWriter.setPrefix(prefix, namespace);
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+        }
+
+        @Override
+        public String getPrefix(String namespace, boolean generatePrefix) {
+            try {
+                return mWriter.getPrefix(namespace);
+            } catch (XMLStreamException exc) {
+                throw new IllegalArgumentException(exc.getMessage(), exc);
+            }
+        }
+
+        @Override
+        public int getDepth() {
+            return mElements.size() / 2;
+        }
+
+        @Override
+        public String getNamespace() {
+            return mElements.isEmpty() ? null : mElements.get(mElements.size() - 2);
+        }
+
+        @Override
+        public String getName() {
+            return mElements.isEmpty() ? null : mElements.get(mElements.size() - 1);
+        }
+
+        @Override
+        public XmlSerializer startTag(String namespace, String name) throws IOException {
+            try {
+                if (namespace == null || namespace.length() == 0) {
+                    mWriter.writeStartElement(name);
+                } else {
+                    mWriter.writeStartElement(namespace, name);
+                }
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+            mElements.add(namespace);
+            mElements.add(name);
+            return this;
+        }
+
+        @Override
+        public XmlSerializer attribute(String namespace, String name, String value) throws IOException {
+            try {
+                if (namespace == null || namespace.length() == 0) {
+                    mWriter.writeAttribute(name, value);
+                } else {
+                    mWriter.writeAttribute(namespace, name, value);
+                }
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+            return this;
+        }
+
+        @Override
+        public XmlSerializer endTag(String namespace, String name) throws IOException {
+            try {
+                mWriter.writeEndElement();
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+            mElements.remove(mElements.size() - 1);
+            mElements.remove(mElements.size() - 1);
+            return this;
+        }
+
+        @Override
+        public XmlSerializer text(String text) throws IOException {
+            try {
+                mWriter.writeCharacters(text);
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+            return this;
+        }
+
+        @Override
+        public XmlSerializer text(char[] buf, int start, int len) throws IOException {
+            try {
+                mWriter.writeCharacters(buf, start, len);
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+            return this;
+        }
+
+        @Override
+        public void cdsect(String text) throws IOException {
+            try {
+                mWriter.writeCData(text);
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+        }
+
+        @Override
+        public void entityRef(String text) throws IOException {
+            try {
+                mWriter.writeEntityRef(text);
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+        }
+
+        @Override
+        public void processingInstruction(String text) throws IOException {
+            int separator = text.indexOf(' ');
+            try {
+                if (separator < 0) {
+                    mWriter.writeProcessingInstruction(text);
+                } else {
+                    mWriter.writeProcessingInstruction(text.substring(0, separator), text.substring(separator + 1));
+                }
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+        }
+
+        @Override
+        public void comment(String text) throws IOException {
+            try {
+                mWriter.writeComment(text);
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+        }
+
+        @Override
+        public void docdecl(String text) throws IOException {
+            try {
+                mWriter.writeDTD("<!DOCTYPE" + text + ">");
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(String text) throws IOException {
+            text(text);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                mWriter.flush();
+            } catch (XMLStreamException exc) {
+                throw toIOException(exc);
+            }
+        }
+
+        private static IOException toIOException(XMLStreamException exc) {
+            IOException ioException = new IOException(exc.getMessage());
+            ioException.initCause(exc);
+            return ioException;
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class XmlBinaryFormatTest {
+
+    @Test
+    public void roundTripsTree() throws Exception {
+        XmlNode root = new XmlNode();
+        root.parseOrThrow(new StringReader("<r a=\"1\" b=\"\"><c>text é中</c><c/><d><e x=\"y\">v</e></d></r>"));
+        XmlNode read = roundTrip(root);
+        assertEquals(root.toString(), read.toString());
+        assertEquals("", read.getAttribute("b"));
+        assertNull(read.getAttribute("missing"));
+    }
+
+    @Test
+    public void roundTripsLargeValuesAndCounts() throws Exception {
+        XmlNode root = node("r");
+        char[] chars = new char[100000];
+        Arrays.fill(chars, 'z');
+        root.setValue(new String(chars));
+        for (int i = 0; i < 300; i++) {
+            XmlNode child = node("n" + i);
+            child.setAttribute("i", String.valueOf(i));
+            root.addChild(child);
+        }
+        XmlNode read = roundTrip(root);
+        assertEquals(100000, read.getValue().length());
+        assertEquals(300, read.getChildrenCount());
+        assertEquals("299", read.getChild(299).getAttribute("i"));
+    }
+
+    @Test
+    public void rejectsOtherStreams() {
+        assertReadFails(new byte[] {'<', 'r', '/', '>'});
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsTruncatedStream() throws Exception {
+        XmlNode root = node("r");
+        root.addChild(node("child"));
+        byte[] data = write(root);
+        XmlNode.readBinary(new ByteArrayInputStream(data, 0, data.length - 1));
+    }
+
+    @Test
+    public void rejectsOverflowingVarint() throws Exception {
+        byte[] header = header();
+        // name count with bits above 31.
+        assertReadFails(concat(header, new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f}));
+        // six byte varint.
+        assertReadFails(concat(header, new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0}));
+    }
+
+    @Test(expected = EOFException.class)
+    public void doesNotTrustDeclaredStringLength() throws Exception {
+        // one name which claims to be 2^31-1 bytes long, stream ends right after it.
+        byte[] data = concat(header(), new byte[] {1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07});
+        XmlNode.readBinary(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Magic and version of a stream written by the current format.
+     */
+    private static byte[] header() throws IOException {
+        return Arrays.copyOf(write(node("r")), 4);
+    }
+
+    private static XmlNode node(String name) {
+        XmlNode node = new XmlNode();
+        node.setName(name);
+        return node;
+    }
+
+    private static XmlNode roundTrip(XmlNode node) throws IOException {
+        return XmlNode.readBinary(new ByteArrayInputStream(write(node)));
+    }
+
+    private static byte[] write(XmlNode node) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        node.writeBinary(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static void assertReadFails(byte[] data) {
+        try {
+            XmlNode.readBinary(new ByteArrayInputStream(data));
+            fail();
+        } catch (IOException exc) {
+            // expected.
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+public class XmlDocumentTest {
+
+    @Test
+    public void keepsTextMixedWithChildren() throws Exception {
+        XmlDocument document = XmlDocument.parse(new StringReader("<r>a<x>1</x>b&amp;c<y/>d<z k=\"v\">2</z>\n</r>"));
+        int root = document.getRoot();
+        assertEquals("ab&cd\n", document.getValue(root));
+        assertEquals("1", document.getValue(document.getChild(root, "x")));
+        assertEquals("2", document.getValue(document.getChild(root, "z")));
+        assertEquals("v", document.getAttribute(document.getChild(root, "z"), "k"));
+    }
+
+    @Test
+    public void storesSplitTextOnce() throws Exception {
+        StringBuilder xml = new StringBuilder("<rows>\n");
+        for (int i = 0; i < 20000; i++) {
+            xml.append("  <row id=\"").append(i).append("\">value ").append(i).append("</row>\n");
+        }
+        xml.append("</rows>");
+        XmlDocument document = XmlDocument.parse(new StringReader(xml.toString()));
+
+        int expected = 0;
+        for (int node = 0; node < document.getNodeCount(); node++) {
+            expected += document.getValue(node).length();
+            for (int i = 0; i < document.getAttributeCount(node); i++) {
+                expected += document.getAttributeValue(node, i).length();
+            }
+        }
+        assertEquals(20001, document.getNodeCount());
+        assertEquals(20000 * 3 + 1, document.getValue(document.getRoot()).length());
+        assertEquals(expected, document.getTextSize());
+    }
+
+}
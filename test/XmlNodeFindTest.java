@@ -0,0 +1,113 @@
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class XmlNodeFindTest {
+
+    private static final String[] NAMES = {"a", "b", "c", "d"};
+
+    @Test
+    public void prefersDirectChild() throws Exception {
+        XmlNode root = parse("<root><a><timeout>nested</timeout></a><timeout>direct</timeout></root>");
+        assertEquals("direct", root.findNode("timeout").getValue());
+        root.buildIndex();
+        assertEquals("direct", root.findNode("timeout").getValue());
+        assertEquals("direct", root.freeze().findNode("timeout").getValue());
+    }
+
+    @Test
+    public void searchesChildrenOneByOne() throws Exception {
+        XmlNode root = parse("<r><a><b><t>deep</t></b><t>first</t></a><t2/><c><t>late</t></c></r>");
+        assertEquals("first", root.findNode("t").getValue());
+        root.buildIndex();
+        assertEquals("first", root.findNode("t").getValue());
+        assertEquals("deep", root.getChild("a").getChild("b").findNode("t").getValue());
+    }
+
+    @Test
+    public void indexMatchesTreeWalk() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            XmlNode plain = randomTree(random);
+            XmlNode indexed = plain.freeze();
+            XmlNode built = randomTree(new Random(round));
+            XmlNode reference = randomTree(new Random(round));
+            built.buildIndex();
+            for (String name : NAMES) {
+                assertSame(baselineFind(plain, name), plain.findNode(name));
+                assertEquals(path(plain.findNode(name)), path(indexed.findNode(name)));
+                assertEquals(path(reference.findNode(name)), path(built.findNode(name)));
+                XmlNode child = built.hasChild() ? built.getChild(0) : built;
+                XmlNode referenceChild = reference.hasChild() ? reference.getChild(0) : reference;
+                assertEquals(path(referenceChild.findNode(name)), path(child.findNode(name)));
+            }
+            // index is kept or rebuilt after modification.
+            XmlNode added = new XmlNode();
+            added.setName("a");
+            built.getChildren().add(0, added);
+            XmlNode referenceAdded = new XmlNode();
+            referenceAdded.setName("a");
+            reference.getChildren().add(0, referenceAdded);
+            assertEquals(path(reference.findNode("a")), path(built.findNode("a")));
+        }
+    }
+
+    /**
+     * Lookup order of the original implementation: direct child first, then children one by one.
+     */
+    private static XmlNode baselineFind(XmlNode node, String name) {
+        XmlNode child = node.getChild(name);
+        if (child != XmlNode.NULL_NODE) {
+            return child;
+        }
+        for (int i = 0; i < node.getChildrenCount(); i++) {
+            XmlNode found = baselineFind(node.getChild(i), name);
+            if (found != XmlNode.NULL_NODE) {
+                return found;
+            }
+        }
+        return XmlNode.NULL_NODE;
+    }
+
+    private static XmlNode randomTree(Random random) {
+        XmlNode root = new XmlNode();
+        root.setName("root");
+        addChildren(root, random, 0);
+        return root;
+    }
+
+    private static void addChildren(XmlNode node, Random random, int depth) {
+        int count = depth < 5 ? random.nextInt(4) : 0;
+        for (int i = 0; i < count; i++) {
+            XmlNode child = new XmlNode();
+            child.setName(NAMES[random.nextInt(NAMES.length)]);
+            node.addChild(child);
+            addChildren(child, random, depth + 1);
+        }
+    }
+
+    /**
+     * Child positions from root, nodes of different trees are compared by it.
+     */
+    private static String path(XmlNode node) {
+        if (node == XmlNode.NULL_NODE) {
+            return "null";
+        }
+        StringBuilder path = new StringBuilder();
+        for (; node.getParent() != null; node = node.getParent()) {
+            path.insert(0, "/" + node.getParent().getChildren().indexOf(node));
+        }
+        return path.toString();
+    }
+
+    private static XmlNode parse(String xml) throws XmlParseException {
+        XmlNode node = new XmlNode();
+        node.parseOrThrow(new StringReader(xml));
+        return node;
+    }
+
+}
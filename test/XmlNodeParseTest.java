@@ -0,0 +1,102 @@
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class XmlNodeParseTest {
+
+    @Test
+    public void parsesDocument() throws Exception {
+        XmlNode root = parse("<r id=\"1\"><a>x</a><b/></r>");
+        assertEquals("r", root.getName());
+        assertEquals("1", root.getAttribute("id"));
+        assertEquals(2, root.getChildrenCount());
+        assertEquals("x", root.getChildValue("a"));
+    }
+
+    @Test
+    public void reportsPositionAndElementPath() {
+        try {
+            parse("<r>\n<a>\n<b></a></r>");
+            fail();
+        } catch (XmlParseException exc) {
+            assertEquals(3, exc.getLineNumber());
+            assertTrue(exc.getColumnNumber() > 0);
+            assertEquals("/r/a/b", exc.getElementPath());
+        }
+    }
+
+    @Test
+    public void reportsTruncatedInput() {
+        try {
+            parse("<r><a>");
+            fail();
+        } catch (XmlParseException exc) {
+            assertEquals("/r/a", exc.getElementPath());
+        }
+    }
+
+    @Test
+    public void wrapsUncheckedParserFailures() {
+        assertParseFails("<r b=\"&;m<p;\"/>");
+        assertParseFails("<r>&#amp;</r>");
+    }
+
+    @Test
+    public void rejectsInputWithoutRoot() {
+        assertParseFails("");
+        assertParseFails("  \n ");
+        assertFalse(new XmlNode().parse(new StringReader("")));
+    }
+
+    @Test
+    public void stopsAtEndOfRoot() throws Exception {
+        XmlNode root = parse("<r><a/></r></extra><r2/>");
+        assertEquals("r", root.getName());
+        assertEquals(1, root.getChildrenCount());
+    }
+
+    @Test
+    public void parsesSiblingRoots() throws Exception {
+        List<XmlNode> roots = XmlNode.parseRoots(new StringReader("<a>1</a><b>2</b> <c/>"));
+        assertEquals(3, roots.size());
+        assertEquals("a", roots.get(0).getName());
+        assertEquals("2", roots.get(1).getValue());
+        assertEquals("c", roots.get(2).getName());
+    }
+
+    @Test
+    public void keepsTextMixedWithChildren() throws Exception {
+        String xml = "<r>a<x>1</x>b&amp;c<y/>d<z>2</z>\n</r>";
+        assertEquals("ab&cd\n", parse(xml).getValue());
+
+        XmlParseOptions options = new XmlParseOptions();
+        options.setLazyText(true);
+        XmlNode lazy = new XmlNode();
+        lazy.parseOrThrow(new StringReader(xml), options);
+        assertTrue(lazy.getValueSequence() instanceof XmlTextBuffer.Slice);
+        assertEquals("ab&cd\n", lazy.getValueSequence().toString());
+        assertEquals("2", lazy.getChildValue("z"));
+    }
+
+    private static XmlNode parse(String xml) throws XmlParseException {
+        XmlNode node = new XmlNode();
+        node.parseOrThrow(new StringReader(xml));
+        return node;
+    }
+
+    private static void assertParseFails(String xml) {
+        try {
+            parse(xml);
+            fail("Parsed " + xml);
+        } catch (XmlParseException exc) {
+            // expected.
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class XmlPathTest {
+
+    private static final String XML = "<catalog>"
+            + "<product id=\"1\" type=\"x\"><name>a</name></product>"
+            + "<product id=\"2\"><name>b</name><part><name>b1</name></part></product>"
+            + "<product id=\"3\" type=\"x\"><name>c</name></product>"
+            + "</catalog>";
+
+    @Test
+    public void selectsChildren() throws Exception {
+        XmlNode root = parse(XML);
+        assertEquals(3, XmlPath.compile("product").selectAll(root).size());
+        assertEquals("b", XmlPath.compile("product[2]/name").selectValue(root));
+        assertEquals("b", XmlPath.compile("/catalog/product[@id='2']/name").selectValue(root));
+        assertEquals("c", XmlPath.compile("product[@type=\"x\"][2]/name").selectValue(root));
+        assertEquals(2, XmlPath.compile("*[@type]").selectAll(root).size());
+    }
+
+    @Test
+    public void selectsDescendants() throws Exception {
+        XmlNode root = parse(XML);
+        assertEquals("a b b1 c", values(XmlPath.compile("//name").selectAll(root)));
+        assertEquals("b1", XmlPath.compile("product//part/name").selectValue(root));
+        assertEquals(1, XmlPath.compile("//catalog").selectAll(root).size());
+    }
+
+    @Test
+    public void evaluatesAbsolutePathFromAnyNode() throws Exception {
+        XmlNode root = parse(XML);
+        XmlNode name = root.getChild(1).getChild(0);
+        assertSame(root.getChild(2), XmlPath.compile("/catalog/product[3]").selectFirst(name));
+        assertTrue(XmlPath.compile("/other").selectFirst(name).isNullNode());
+    }
+
+    @Test
+    public void returnsNestedMatchesOnceInDocumentOrder() throws Exception {
+        XmlNode root = parse("<r><a><c>1</c><a><c>2</c></a><c>3</c></a></r>");
+        assertEquals("1 2 3", values(XmlPath.compile("//a//c").selectAll(root)));
+        assertEquals(1, XmlPath.compile("//a//c").selectAll(parse("<r><a><a><c/></a></a></r>")).size());
+    }
+
+    @Test
+    public void returnsChildrenOfNestedContextsInDocumentOrder() throws Exception {
+        XmlNode root = parse("<r><b><b><c>1</c></b><c>2</c></b></r>");
+        XmlPath path = XmlPath.compile("//b/c");
+        assertEquals("1 2", values(path.selectAll(root)));
+        assertEquals("1", path.selectValue(root));
+        root.buildIndex();
+        assertEquals("1 2", values(path.selectAll(root)));
+        assertEquals("1", path.selectValue(root));
+        assertEquals("1 2", values(XmlPath.compile("/r//b/c").selectAll(root.getChild(0))));
+    }
+
+    @Test
+    public void rejectsMalformedExpressions() {
+        assertMalformed("");
+        assertMalformed("a/");
+        assertMalformed("a//");
+        assertMalformed("a[");
+        assertMalformed("a[0]");
+        assertMalformed("a[x]");
+        assertMalformed("a[@id=1]");
+        assertMalformed("a[@id='1]");
+        assertMalformed("a b");
+    }
+
+    @Test
+    public void reportsErrorPosition() {
+        try {
+            XmlPath.compile("a/b[");
+            fail();
+        } catch (IllegalArgumentException exc) {
+            assertTrue(exc.getMessage(), exc.getMessage().contains(" at 4 "));
+        }
+    }
+
+    private static XmlNode parse(String xml) throws XmlParseException {
+        XmlNode node = new XmlNode();
+        node.parseOrThrow(new StringReader(xml));
+        return node;
+    }
+
+    private static String values(List<XmlNode> nodes) {
+        StringBuilder builder = new StringBuilder();
+        for (XmlNode node : nodes) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(node.getValue());
+        }
+        return builder.toString();
+    }
+
+    private static void assertMalformed(String expression) {
+        try {
+            XmlPath.compile(expression);
+            fail("Compiled " + expression);
+        } catch (IllegalArgumentException exc) {
+            // expected.
+        }
+    }
+
+}
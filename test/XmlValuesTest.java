@@ -0,0 +1,74 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class XmlValuesTest {
+
+    private enum Color { RED, GREEN }
+
+    @Test
+    public void parsesIntAndLongLimits() {
+        assertEquals(Integer.MAX_VALUE, XmlValues.parseInt("2147483647", 0));
+        assertEquals(Integer.MIN_VALUE, XmlValues.parseInt("-2147483648", 0));
+        assertEquals(Long.MAX_VALUE, XmlValues.parseLong("9223372036854775807", 0));
+        assertEquals(Long.MIN_VALUE, XmlValues.parseLong("-9223372036854775808", 0));
+        assertEquals(12, XmlValues.parseInt("+12", 0));
+    }
+
+    @Test
+    public void returnsDefaultOnOverflow() {
+        assertEquals(-1, XmlValues.parseInt("2147483648", -1));
+        assertEquals(-1, XmlValues.parseInt("-2147483649", -1));
+        assertEquals(-1, XmlValues.parseLong("9223372036854775808", -1));
+        assertEquals(-1, XmlValues.parseLong("-9223372036854775809", -1));
+        assertEquals(-1, XmlValues.parseLong("99999999999999999999", -1));
+    }
+
+    @Test
+    public void returnsDefaultOnMalformedInteger() {
+        assertEquals(7, XmlValues.parseInt(null, 7));
+        assertEquals(7, XmlValues.parseInt("", 7));
+        assertEquals(7, XmlValues.parseInt("-", 7));
+        assertEquals(7, XmlValues.parseInt("1a", 7));
+        assertEquals(7, XmlValues.parseInt(" 1", 7));
+    }
+
+    @Test
+    public void parsesDecimals() {
+        assertEquals(1.5, XmlValues.parseDouble("1.5", 0), 0);
+        assertEquals(-2000, XmlValues.parseDouble("-2e3", 0), 0);
+        assertEquals(0.5, XmlValues.parseDouble(".5", 0), 0);
+        assertEquals(Double.NEGATIVE_INFINITY, XmlValues.parseDouble("-Infinity", 0), 0);
+        assertTrue(Double.isNaN(XmlValues.parseDouble("NaN", 0)));
+        assertEquals(2.5f, XmlValues.parseFloat(new StringBuilder("2.5"), 0), 0);
+    }
+
+    @Test
+    public void returnsDefaultOnMalformedDecimal() {
+        assertEquals(3, XmlValues.parseDouble(null, 3), 0);
+        assertEquals(3, XmlValues.parseDouble(".", 3), 0);
+        assertEquals(3, XmlValues.parseDouble("1e", 3), 0);
+        assertEquals(3, XmlValues.parseDouble("Inf", 3), 0);
+        assertEquals(3, XmlValues.parseDouble("NaNa", 3), 0);
+        assertEquals(3, XmlValues.parseFloat("0x10", 3), 0);
+    }
+
+    @Test
+    public void parsesEnumByName() {
+        assertEquals(Color.GREEN, XmlValues.parseEnum("GREEN", Color.class, Color.RED));
+        assertEquals(Color.GREEN, XmlValues.parseEnum(new StringBuilder("GREEN"), Color.class, Color.RED));
+        assertEquals(Color.RED, XmlValues.parseEnum("green", Color.class, Color.RED));
+        assertEquals(Color.RED, XmlValues.parseEnum(null, Color.class, Color.RED));
+    }
+
+    @Test
+    public void parsesBooleanLikeJdk() {
+        assertTrue(XmlValues.parseBoolean("true"));
+        assertTrue(XmlValues.parseBoolean("TrUe"));
+        assertFalse(XmlValues.parseBoolean("yes"));
+        assertFalse(XmlValues.parseBoolean(null));
+    }
+
+}